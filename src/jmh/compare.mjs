@@ -0,0 +1,59 @@
+// Compares a JMH JSON result (-rf json) with the checked-in baseline.
+//
+//   node src/jmh/compare.mjs [result] [--threshold 0.10] [--update]
+//
+// result defaults to target/jmh-result.json. Benchmarks are matched by name and @Param values; a score worse than
+// the baseline by more than threshold (and more than the two runs' combined error) is a regression and the script
+// exits with 1. --update writes result over src/jmh/baseline.json, to be committed with the reference machine
+// and JDK noted in the commit message.
+import { existsSync, readFileSync, writeFileSync } from 'node:fs';
+
+const BASELINE = 'src/jmh/baseline.json';
+
+const args = process.argv.slice(2);
+const update = args.includes('--update');
+const at = args.indexOf('--threshold');
+const threshold = at >= 0 ? Number(args[at + 1]) : 0.1;
+const result = args.find((arg, i) => !arg.startsWith('--') && args[i - 1] !== '--threshold') ?? 'target/jmh-result.json';
+
+if (update) {
+  writeFileSync(BASELINE, readFileSync(result));
+  console.log(`baseline updated from ${result}`);
+  process.exit(0);
+}
+if (!existsSync(BASELINE)) {
+  console.log(`no ${BASELINE} yet; record a reference run with --update`);
+  process.exit(0);
+}
+
+const key = (run) =>
+  run.benchmark +
+  Object.entries(run.params ?? {})
+    .map(([name, value]) => ` ${name}=${value}`)
+    .join('');
+const index = (file) => new Map(JSON.parse(readFileSync(file, 'utf8')).map((run) => [key(run), run]));
+
+const baseline = index(BASELINE);
+let regressions = 0;
+for (const [name, run] of index(result)) {
+  const reference = baseline.get(name);
+  if (!reference) {
+    console.log(`new       ${name}`);
+    continue;
+  }
+  const current = run.primaryMetric;
+  const previous = reference.primaryMetric;
+  // thrpt 越高越好，其他模式（avgt、sample、ss）越低越好
+  const sign = run.mode === 'thrpt' ? 1 : -1;
+  const change = (sign * (current.score - previous.score)) / previous.score;
+  const error = (Number(current.scoreError) || 0) + (Number(previous.scoreError) || 0);
+  const regressed = change < -threshold && Math.abs(current.score - previous.score) > error;
+  if (regressed) {
+    regressions++;
+  }
+  console.log(
+    `${regressed ? 'REGRESSED' : 'ok       '} ${name}: ${previous.score.toFixed(3)} -> ${current.score.toFixed(3)} ` +
+      `${current.scoreUnit} (${change >= 0 ? '+' : ''}${(change * 100).toFixed(1)}%)`,
+  );
+}
+process.exit(regressions > 0 ? 1 : 0);
@@ -0,0 +1,83 @@
+package com.github.laplusijns;
+
+import com.github.laplusijns.blob.BlobStore;
+import com.github.laplusijns.blob.DirectBlobStore;
+import com.github.laplusijns.blob.HeapBlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+
+/** Building the {@link BlobController} response and streaming its body, per blob storage and payload size. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlobControllerBenchmark {
+
+    private static final String UUID = "benchmark";
+
+    @Param({"HEAP", "DIRECT"})
+    JocbProperties.StorageType storage;
+
+    @Param({"16384", "1048576", "8388608"})
+    int size;
+
+    private ImageCache imageCache;
+    private BlobController blobController;
+
+    @Setup
+    public void setUp() {
+        final JocbProperties jocbProperties = new JocbProperties();
+        final BlobStore blobStore =
+                storage == JocbProperties.StorageType.DIRECT ? new DirectBlobStore() : new HeapBlobStore();
+        imageCache = new ImageCache(jocbProperties, blobStore);
+        blobController = new BlobController(
+                imageCache, new VariantService(imageCache, jocbProperties, new SimpleMeterRegistry()), jocbProperties);
+        final long expired = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        imageCache.put(new FileObject(
+                expired,
+                "圖片.png",
+                imageCache.store(new byte[size]),
+                UUID,
+                null,
+                null,
+                "image/png",
+                null,
+                Room.DEFAULT));
+    }
+
+    @TearDown
+    public void tearDown() {
+        imageCache.deleteAllFiles(Room.DEFAULT);
+    }
+
+    @Benchmark
+    public ResponseEntity<Resource> response() {
+        return blobController.downloadFile(UUID);
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        try (InputStream in = blobController.downloadFile(UUID).getBody().getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.laplusijns;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.Disposable;
+
+/**
+ * Publishing into {@link CacheEventBus} with N subscribers. {@code windowMillis=0} flushes every event on its
+ * own; with a window, events are compacted and fanned out per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheEventBusBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({"0", "1", "16", "128"})
+    int subscribers;
+
+    @Param({"0", "100"})
+    long windowMillis;
+
+    private final String[] keys = new String[KEYS];
+    private final List<Disposable> subscriptions = new ArrayList<>();
+    private final LongAdder received = new LongAdder();
+    private CacheEventBus<ImageCacheEvent> events;
+
+    @Setup
+    public void setUp() {
+        final JocbProperties.Events properties = new JocbProperties.Events();
+        properties.setWindow(Duration.ofMillis(windowMillis));
+        events = new CacheEventBus<>(
+                properties,
+                new EventCompactor<>(ImageCacheEvent::uuid, ImageCacheEvent::type, ImageCacheEvent::merge));
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "key-" + i;
+        }
+        for (int i = 0; i < subscribers; i++) {
+            subscriptions.add(events.flux().subscribe(batch -> received.add(batch.size()), _ -> {}));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscriptions.forEach(Disposable::dispose);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void publish() {
+        final String uuid = keys[ThreadLocalRandom.current().nextInt(KEYS)];
+        events.publish(v -> ImageCacheEvent.delete(uuid, v));
+    }
+}
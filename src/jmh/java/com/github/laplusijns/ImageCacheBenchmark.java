@@ -0,0 +1,99 @@
+package com.github.laplusijns;
+
+import com.github.laplusijns.blob.Blob;
+import com.github.laplusijns.blob.HeapBlobStore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Put / get throughput of {@link ImageCache} and {@link TextCache} under contention. With {@code maxSize=128}
+ * most puts of the 4096 keys evict another entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageCacheBenchmark {
+
+    private static final int KEYS = 4096;
+
+    @Param({"128", "100000"})
+    long maxSize;
+
+    private final String[] keys = new String[KEYS];
+    private ImageCache imageCache;
+    private TextCache textCache;
+    private Blob blob;
+    private long expired;
+
+    @Setup
+    public void setUp() {
+        final JocbProperties jocbProperties = new JocbProperties();
+        jocbProperties.getImageTimeout().setMaxSize(maxSize);
+        jocbProperties.getTextTimeout().setMaxSize(maxSize);
+        imageCache = new ImageCache(jocbProperties, new HeapBlobStore());
+        textCache = new TextCache(jocbProperties);
+        blob = imageCache.store(new byte[16 * 1024]);
+        expired = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "key-" + i;
+            imageCache.put(file(keys[i]));
+        }
+    }
+
+    private FileObject file(final String uuid) {
+        return new FileObject(expired, uuid + ".png", blob, uuid, 640, 480, "image/png", null, Room.DEFAULT);
+    }
+
+    private String key() {
+        return keys[ThreadLocalRandom.current().nextInt(KEYS)];
+    }
+
+    @Benchmark
+    @Threads(4)
+    public FileObject get() {
+        return imageCache.file(key());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void put() {
+        imageCache.put(file(key()));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void textPut() {
+        textCache.put(Room.DEFAULT, key(), expired);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public FileObject mixedGet() {
+        return imageCache.file(key());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedPut() {
+        imageCache.put(file(key()));
+    }
+}
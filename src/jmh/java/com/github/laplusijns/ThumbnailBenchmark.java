@@ -0,0 +1,119 @@
+package com.github.laplusijns;
+
+import com.github.laplusijns.blob.HeapBlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Header probe, full and subsampled decode, and thumbnail rendering of a 4:3 photo-like image.
+ *
+ * <p>WebP can only be decoded here, so {@code -p format=webp} reads {@code <edge>.webp} from the directory in
+ * {@code -Djocb.bench.webp-dir} (default {@code src/jmh/resources/webp}), e.g. made with {@code cwebp}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThumbnailBenchmark {
+
+    @Param({"png", "jpeg"})
+    String format;
+
+    @Param({"640", "1920", "4000"})
+    int edge;
+
+    private byte[] encoded;
+    private BufferedImage decoded;
+    private int sizeThumbnail;
+    private ThumbnailService thumbnailService;
+
+    @Setup
+    public void setUp() throws IOException {
+        encoded = "webp".equals(format) ? Files.readAllBytes(webpFixture(edge)) : encode(sample(edge), format);
+        decoded = ImageIO.read(new ByteArrayInputStream(encoded));
+        final JocbProperties jocbProperties = new JocbProperties();
+        sizeThumbnail = jocbProperties.getSizeThumbnail();
+        thumbnailService = new ThumbnailService(
+                new ImageCache(jocbProperties, new HeapBlobStore()), jocbProperties, new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() {
+        thumbnailService.close();
+    }
+
+    @Benchmark
+    public ImageProbe.Size probe() throws IOException {
+        return ImageProbe.probe(new ByteArrayInputStream(encoded));
+    }
+
+    @Benchmark
+    public BufferedImage decodeFull() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(encoded));
+    }
+
+    @Benchmark
+    public BufferedImage decodeSubsampled() throws IOException {
+        return ImageProbe.decode(new ByteArrayInputStream(encoded), sizeThumbnail);
+    }
+
+    @Benchmark
+    public FileObject.Thumbnail thumbnail() throws IOException {
+        return thumbnailService.createThumbnail(decoded);
+    }
+
+    /** Gradient with noise so PNG / JPEG sizes resemble a photo rather than a flat fill. */
+    static BufferedImage sample(final int edge) {
+        final int width = edge;
+        final int height = edge * 3 / 4;
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int r = x * 255 / width;
+                final int g = y * 255 / height;
+                image.setRGB(x, y, (r << 16) | (g << 8) | random.nextInt(64));
+            }
+        }
+        return image;
+    }
+
+    static byte[] encode(final BufferedImage image, final String format) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, baos)) {
+            throw new IllegalStateException("no ImageIO writer for " + format);
+        }
+        return baos.toByteArray();
+    }
+
+    private static Path webpFixture(final int edge) {
+        final Path path = Path.of(System.getProperty("jocb.bench.webp-dir", "src/jmh/resources/webp"))
+                .resolve(edge + ".webp");
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalStateException("missing WebP fixture " + path.toAbsolutePath());
+        }
+        return path;
+    }
+}
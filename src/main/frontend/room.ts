@@ -0,0 +1,11 @@
+const ROOM_STORAGE_KEY = 'room';
+
+// 目前的房間：網址的 ?room= 優先，並記住給之後開啟的頁面使用
+export function currentRoom(): string {
+  const fromUrl = new URLSearchParams(window.location.search).get('room');
+  if (fromUrl) {
+    localStorage.setItem(ROOM_STORAGE_KEY, fromUrl);
+    return fromUrl;
+  }
+  return localStorage.getItem(ROOM_STORAGE_KEY) ?? 'default';
+}
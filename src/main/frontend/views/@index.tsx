@@ -1,6 +1,7 @@
 import { useEffect, useRef, useState } from 'react';
 import { ViewConfig } from '@vaadin/hilla-file-router/types.js';
 import { EndpointService } from 'Frontend/generated/endpoints';
+import { currentRoom } from 'Frontend/room';
 import { key, translate } from '@vaadin/hilla-react-i18n';
 import {
   Notification,
@@ -15,6 +16,41 @@ type PreviewItem = {
   file: UploadFile;
   previewUrl?: string;
 };
+type UploadStatus = { id: string; received: number; size: number; chunkSize: number };
+
+// 分段上傳：每段直接串流到伺服器，中斷時查詢進度從已收到的位置續傳
+async function uploadChunked(file: File, contextPath: string): Promise<string> {
+  const base = `${contextPath}/upload`;
+  const params = new URLSearchParams({
+    room: currentRoom(),
+    filename: file.name,
+    contentType: file.type,
+    size: String(file.size),
+  });
+  let res = await fetch(`${base}?${params}`, { method: 'POST' });
+  if (!res.ok) throw { response: res };
+  let status: UploadStatus = await res.json();
+  let retries = 0;
+  while (status.received < status.size) {
+    const end = Math.min(status.size, status.received + status.chunkSize);
+    try {
+      res = await fetch(`${base}/${status.id}?offset=${status.received}`, {
+        method: 'PUT',
+        headers: { 'Content-Type': 'application/octet-stream' },
+        body: file.slice(status.received, end),
+      });
+    } catch (err) {
+      if (++retries > 3) throw err;
+      res = await fetch(`${base}/${status.id}`);
+    }
+    // 409 表示 offset 不符，回應內容是伺服器目前的進度
+    if (!res.ok && res.status !== 409) throw { response: res };
+    status = await res.json();
+  }
+  res = await fetch(`${base}/${status.id}/complete`, { method: 'POST' });
+  if (!res.ok) throw { response: res };
+  return res.text();
+}
 export const config: ViewConfig = {
   menu: { order: 0, icon: 'line-awesome/svg/file-upload-solid.svg', title: key`page.index.title` },
   title: key`page.index.title`,
@@ -22,10 +58,15 @@ export const config: ViewConfig = {
 export default function UploadView() {
   const uploadRef = useRef<UploadElement>(null);
   const [previews, setPreviews] = useState<PreviewItem[]>([]);
+  const [contextPath, setContextPath] = useState('');
 
   // 用於控制哪個 Dialog 打開
   const [selectedPreview, setSelectedPreview] = useState<PreviewItem | null>(null);
 
+  useEffect(() => {
+    EndpointService.contextPath().then(setContextPath);
+  }, []);
+
   /* ====== 貼上圖片支援 ====== */
   useEffect(() => {
     const handlePaste = (event: ClipboardEvent) => {
@@ -65,7 +106,7 @@ export default function UploadView() {
   const handleUploadRequest = async (e: UploadRequestEvent) => {
     e.preventDefault();
     const uploadRef = e.target as UploadElement;
-    EndpointService.uploadFile(e.detail.file)
+    uploadChunked(e.detail.file, contextPath)
       .then((fileId) => {
         uploadRef.files = uploadRef.files.map((file) => {
           file.status = '';
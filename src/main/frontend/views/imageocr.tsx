@@ -9,6 +9,7 @@ import {
   type UploadElement,
 } from '@vaadin/react-components';
 import { OcrEndpointService } from 'Frontend/generated/endpoints';
+import { currentRoom } from 'Frontend/room';
 import OcrResponse from 'Frontend/generated/com/github/laplusijns/ocr/OcrResponse';
 import LabelAndValue from 'Frontend/generated/com/github/laplusijns/LabelAndValue';
 import Result from 'Frontend/generated/com/github/laplusijns/ocr/OcrResponse/Result';
@@ -26,17 +27,33 @@ export default function OcrDemoSimple() {
   const uploadRef = useRef<UploadElement>(null);
   const subscriptionRef = useRef<any>(null);
   const jsessionidRef = useRef<any>(null);
+  // 批次辨識結果，依 uuid 彙整
+  const batchResults = useRef<Map<string, string>>(new Map());
 
   useEffect(() => {
     const jessionid = crypto.randomUUID();
     jsessionidRef.current = jessionid;
     subscriptionRef.current = OcrEndpointService.ocrResponseSubscription(jessionid).onNext((res: OcrResponse) => {
+      if (res.uuid) {
+        batchResults.current.set(res.uuid, res.result === Result.SUCCESS ? res.response : `⚠ ${res.response}`);
+        setResult(Array.from(batchResults.current, ([uuid, text]) => `[${uuid}]\n${text}`).join('\n\n'));
+        return;
+      }
       if (res.result === Result.SUCCESS) {
         Notification.show(translate(key`notify.imageocr.success`), {
           duration: 2000,
           position: 'top-center',
         });
         setResult(res.response);
+      } else if (res.result === Result.PARTIAL) {
+        // 串流片段，完成時 SUCCESS 會帶完整文字覆蓋
+        setResult((prev) => (prev ?? '') + res.response);
+      } else if (res.result === Result.REJECTED) {
+        Notification.show(translate(key`notify.imageocr.busy`), {
+          duration: 3000,
+          position: 'top-center',
+          theme: 'warning',
+        });
       } else if (res.result === Result.ERROR) {
         Notification.show(res.response, {
           duration: 2000,
@@ -51,7 +68,7 @@ export default function OcrDemoSimple() {
     };
   }, []);
   useEffect(() => {
-    OcrEndpointService.lvs()
+    OcrEndpointService.lvs(currentRoom())
       .then((uuids: LabelAndValue[]) => {
         setTexts(uuids);
       })
@@ -65,11 +82,18 @@ export default function OcrDemoSimple() {
     // 取得選擇值
     const newValue = event.target.value;
 
+    setResult('');
     OcrEndpointService.ocrImageCache(newValue, jsessionidRef.current);
   };
+  const handleOcrAll = () => {
+    batchResults.current = new Map();
+    setResult('');
+    OcrEndpointService.ocrImages(texts.map((text) => text.value), jsessionidRef.current);
+  };
   const handleUploadRequest = async (e: UploadRequestEvent) => {
     e.preventDefault();
     const uploadRef = e.target as UploadElement;
+    setResult('');
     OcrEndpointService.ocrImageFile(e.detail.file, jsessionidRef.current).finally(() => {
       uploadRef.files = [];
     });
@@ -107,6 +131,9 @@ export default function OcrDemoSimple() {
         }))}
         onValueChanged={handleChange}
       />
+      <Button theme="secondary" disabled={texts.length === 0} onClick={handleOcrAll}>
+        {translate(key`page.imageocr.all`)}
+      </Button>
       {/* Upload */}
       <h5>{translate(key`page.imageocr.uploadwithoutsave`)}</h5>
       <Upload ref={uploadRef} noAuto accept="image/*" maxFiles={1} onUploadRequest={handleUploadRequest} />
@@ -1,11 +1,12 @@
 import { ViewConfig } from '@vaadin/hilla-file-router/types.js';
 import { useEffect, useState } from 'react';
 import { EndpointService } from 'Frontend/generated/endpoints';
-import { Button, Notification, Card, TextArea, Dialog } from '@vaadin/react-components';
-import { ActionOnLostSubscription } from '@vaadin/hilla-frontend';
+import { currentRoom } from 'Frontend/room';
+import { Button, Notification, Card, TextArea, TextField, Dialog } from '@vaadin/react-components';
+import { ActionOnLostSubscription, type Subscription } from '@vaadin/hilla-frontend';
 import type TextCacheEvent from 'Frontend/generated/com/github/laplusijns/TextCacheEvent.js';
 import EventTpes from 'Frontend/generated/com/github/laplusijns/EventType';
-import TextObject from 'Frontend/generated/com/github/laplusijns/TextObject';
+import type TextSummary from 'Frontend/generated/com/github/laplusijns/TextSummary';
 import { key, translate } from '@vaadin/hilla-react-i18n';
 
 export const config: ViewConfig = {
@@ -36,32 +37,57 @@ function formatRemain(ms: number) {
 }
 export default function ViewImagesView() {
   const [text, setText] = useState(''); // 輸入文字
-  const [texts, setTexts] = useState<TextObject[]>([]); // 後端文字陣列
+  const [texts, setTexts] = useState<TextSummary[]>([]); // 後端文字陣列
   const [dialogOpened, setDialogOpened] = useState(false);
   const [selectedText, setSelectedText] = useState('');
+  const [query, setQuery] = useState('');
+  const [results, setResults] = useState<TextSummary[] | null>(null); // 搜尋結果，null 表示未搜尋
   const now = useNow();
   const truncateText = (text: string, maxLength = 100) =>
     text.length > maxLength ? text.slice(0, maxLength) + '…' : text;
 
   // 取得後端文字
   const loadTexts = async () => {
-    EndpointService.downloadTexts()
+    EndpointService.downloadTexts(currentRoom())
       .then((result) => setTexts(result))
       .catch((err) => {
         console.error(err);
         Notification.show(translate(key`notify.text.fail`), { duration: 2000, theme: 'error', position: 'top-center' });
       });
   };
+  // 同一段文字的 id 相同，重複上傳只更新到期時間
+  const upsertText = (summary: TextSummary) =>
+    setTexts((prevTexts) =>
+      prevTexts.some((t) => t.id === summary.id)
+        ? prevTexts.map((t) => (t.id === summary.id ? summary : t))
+        : [...prevTexts, summary],
+    );
+  // 列表只有預覽，較長的文字需要時再向後端取全文
+  const fullText = async (t: TextSummary) =>
+    t.preview.length < t.length ? ((await EndpointService.downloadText(currentRoom(), t.id))?.text ?? t.preview) : t.preview;
   const handleTextUpdate = (update: TextCacheEvent) => {
     if (update.type === EventTpes.ADD) {
-      setTexts((prevTexts) => {
-        const exists = prevTexts.some((t) => t.text === update.text);
-        return exists ? prevTexts : [...prevTexts, { text: update.text, expired: update.expired }];
-      });
+      upsertText({ id: update.id, expired: update.expired, preview: update.preview ?? '', length: update.length ?? 0 });
     } else if (update.type === EventTpes.DELETE) {
-      setTexts((prevTexts) => prevTexts.filter((t) => t.text !== update.text));
+      setTexts((prevTexts) => prevTexts.filter((t) => t.id !== update.id));
+    } else if (update.type === EventTpes.DELETE_ALL) {
+      setTexts([]);
     }
   };
+  // 搜尋交給後端索引，輸入停頓後才送出
+  useEffect(() => {
+    if (!query.trim()) {
+      setResults(null);
+      return;
+    }
+    const t = setTimeout(() => {
+      EndpointService.searchTexts(currentRoom(), query, 0, 100)
+        .then((page) => setResults(page.texts))
+        .catch((err) => console.error(err));
+    }, 300);
+    return () => clearTimeout(t);
+  }, [query, texts]);
+  const shown = results ?? texts;
   const handleKeyDown = async (e: KeyboardEvent) => {
     if (e.ctrlKey && e.key === 'v') {
       e.preventDefault();
@@ -79,13 +105,21 @@ export default function ViewImagesView() {
   useEffect(() => {
     loadTexts();
     globalThis.addEventListener('keydown', handleKeyDown);
-    // 訂閱文字更新
-    const subscription = EndpointService.subscribeTextUpdates()
-      .onNext((updates: TextCacheEvent[]) => {
-        // update 物件範例: { type: 'add' | 'remove', text: '...' }
-        updates.forEach(handleTextUpdate);
-      })
-      .onSubscriptionLost(() => ActionOnLostSubscription.RESUBSCRIBE);
+    // 訂閱文字更新；緩衝溢出時訂閱會以錯誤結束，重新訂閱並重新載入
+    let subscription: Subscription<TextCacheEvent[]>;
+    const subscribe = () => {
+      subscription = EndpointService.subscribeTextUpdates(currentRoom())
+        .onNext((updates: TextCacheEvent[]) => {
+          // update 物件範例: { type: 'ADD' | 'DELETE', id: '...', preview: '...' }
+          updates.forEach(handleTextUpdate);
+        })
+        .onError(() => {
+          subscribe();
+          loadTexts();
+        })
+        .onSubscriptionLost(() => ActionOnLostSubscription.RESUBSCRIBE);
+    };
+    subscribe();
 
     return () => {
       globalThis.removeEventListener('keydown', handleKeyDown);
@@ -99,15 +133,15 @@ export default function ViewImagesView() {
       Notification.show(translate(key`notify.text.remind`), { duration: 2000, theme: 'error', position: 'top-center' });
       return;
     }
-    EndpointService.uploadText(text)
-      .then((textObject: TextObject) => {
+    EndpointService.uploadText(currentRoom(), text, undefined)
+      .then((summary: TextSummary) => {
         Notification.show(translate(key`notify.text.success`), {
           duration: 2000,
           theme: 'success',
           position: 'top-center',
         });
         setText(''); // 清空輸入欄
-        setTexts((prev) => [...prev, textObject]);
+        upsertText(summary);
       })
       .catch((err) => {
         console.error(err);
@@ -139,7 +173,7 @@ export default function ViewImagesView() {
       return;
     }
     // 建議後端提供此方法
-    EndpointService.deleteAllTexts()
+    EndpointService.deleteAllTexts(currentRoom())
       .then(() => {
         setTexts([]);
 
@@ -179,21 +213,28 @@ export default function ViewImagesView() {
       </div>
 
       <h3>{translate(key`page.textclip.alreadyupload`)}</h3>
+      <TextField
+        placeholder={translate(key`page.textclip.search`)}
+        value={query}
+        clearButtonVisible
+        onValueChanged={(e) => setQuery(e.detail.value)}
+      />
       <div style={{ display: 'flex', gap: 16, flexWrap: 'wrap' }}>
-        {texts.length === 0 ? (
+        {shown.length === 0 ? (
           <div>{translate(key`page.textclip.notext`)}</div>
         ) : (
-          texts.map((t, index) => (
+          shown.map((t, index) => (
             <Card
-              key={t.text}
+              key={t.id}
               theme="outlined"
               style={{
                 maxWidth: '300px',
                 cursor: 'pointer',
               }}
-              onClick={() => {
-                setSelectedText(t.text);
+              onClick={async () => {
+                setSelectedText(t.preview);
                 setDialogOpened(true);
+                setSelectedText(await fullText(t));
               }}>
               <p
                 className="font-bold"
@@ -203,7 +244,7 @@ export default function ViewImagesView() {
                   whiteSpace: 'pre-wrap',
                   maxHeight: '120px',
                 }}>
-                {truncateText(t.text)}
+                {truncateText(t.preview)}
               </p>
               {(() => {
                 if (!t.expired) return null;
@@ -215,9 +256,9 @@ export default function ViewImagesView() {
               <div slot="footer" style={{ display: 'flex', gap: 8 }}>
                 <Button
                   theme="secondary"
-                  onClick={(e) => {
+                  onClick={async (e) => {
                     e.stopPropagation(); // 避免觸發 Card click
-                    copyText(t.text);
+                    copyText(await fullText(t));
                   }}>
                   {translate(key`btn.copy.text`)}
                 </Button>
@@ -227,7 +268,7 @@ export default function ViewImagesView() {
                   onClick={async (e) => {
                     e.stopPropagation(); // 避免觸發 Card click
                     try {
-                      await EndpointService.deleteText(t.text);
+                      await EndpointService.deleteText(currentRoom(), t.id);
                       setTexts((prev) => prev.filter((text) => text !== t)); // 前端立即移除
                       Notification.show(translate(key`notify.delete.success`), {
                         duration: 2000,
@@ -250,11 +291,11 @@ export default function ViewImagesView() {
           ))
         )}
       </div>
-      {texts.length > 0 && (
+      {shown.length > 0 && (
         <Button
           theme="contrast"
-          onClick={() => {
-            const textArray: string[] = texts.map((t) => t.text);
+          onClick={async () => {
+            const textArray: string[] = await Promise.all(shown.map(fullText));
             copyText(textArray.join('\n'));
           }}>
           {translate(key`btn.copy.text.all`)}
@@ -1,11 +1,13 @@
 import { ViewConfig } from '@vaadin/hilla-file-router/types.js';
 import { useEffect, useState, useRef } from 'react';
 import { EndpointService } from 'Frontend/generated/endpoints';
+import { currentRoom } from 'Frontend/room';
 import type ImageCacheEvent from 'Frontend/generated/com/github/laplusijns/ImageCacheEvent.js';
 import type FileObject from 'Frontend/generated/com/github/laplusijns/FileObject.js';
+import type FilePage from 'Frontend/generated/com/github/laplusijns/FilePage.js';
 import EventTpes from 'Frontend/generated/com/github/laplusijns/EventType';
 import { Button, Notification, Card } from '@vaadin/react-components';
-import { ActionOnLostSubscription } from '@vaadin/hilla-frontend';
+import { ActionOnLostSubscription, type Subscription } from '@vaadin/hilla-frontend';
 import { key, translate } from '@vaadin/hilla-react-i18n';
 
 export const config: ViewConfig = {
@@ -18,6 +20,7 @@ export const config: ViewConfig = {
 };
 // avoid img too small break card
 const MIN_CARD_WIDTH = 200;
+const PAGE_SIZE = 200;
 function useNow(interval = 1000) {
   const [now, setNow] = useState(Date.now());
 
@@ -50,14 +53,19 @@ export default function ViewImagesView() {
     EndpointService.contextPath().then(setContextPath);
   }, []);
 
-  const onMessageReceived = (receiveFiles: ImageCacheEvent[]) => {
+  // 快照載入完成前先暫存事件，之後只套用版本較新的事件
+  const snapshotVersion = useRef<number | null>(null);
+  const pendingEvents = useRef<ImageCacheEvent[]>([]);
+
+  const applyEvents = (receiveFiles: ImageCacheEvent[]) => {
     setFiles((prevFiles) => {
       let updatedFiles = [...prevFiles];
       receiveFiles.forEach((file) => {
-        if (file?.type === EventTpes.ADD) {
-          if (!updatedFiles.some((f) => f.uuid === file.uuid)) {
-            updatedFiles.push(file);
-          }
+        if (file?.type === EventTpes.ADD || file?.type === EventTpes.UPDATE) {
+          // UPDATE 為背景產生的尺寸與縮圖；伺服器合併後的 ADD 也可能帶有這些欄位
+          updatedFiles = updatedFiles.some((f) => f.uuid === file.uuid)
+            ? updatedFiles.map((f) => (f.uuid === file.uuid ? { ...f, ...file } : f))
+            : [...updatedFiles, file];
         } else if (file?.type === EventTpes.DELETE) {
           updatedFiles = updatedFiles.filter((f) => f.uuid !== file.uuid);
         } else if (file?.type === EventTpes.DELETE_ALL) {
@@ -67,6 +75,30 @@ export default function ViewImagesView() {
       return updatedFiles;
     });
   };
+  const onMessageReceived = (receiveFiles: ImageCacheEvent[]) => {
+    const version = snapshotVersion.current;
+    if (version === null) {
+      pendingEvents.current.push(...receiveFiles);
+      return;
+    }
+    applyEvents(receiveFiles.filter((e) => (e.version ?? 0) > version));
+  };
+  const loadSnapshot = async () => {
+    let cursor: string | undefined = undefined;
+    let version: number | null = null;
+    const loaded: FileObject[] = [];
+    do {
+      const page: FilePage = await EndpointService.filePage(currentRoom(), cursor, PAGE_SIZE);
+      version ??= page.version;
+      loaded.push(...page.files);
+      cursor = page.nextCursor;
+    } while (cursor);
+    setFiles(loaded);
+    snapshotVersion.current = version;
+    const pending = pendingEvents.current;
+    pendingEvents.current = [];
+    onMessageReceived(pending);
+  };
   const updateImageSize = (fileUuid: string, isThumbnail: boolean, width: number, height: number) => {
     setFiles((prev) =>
       prev.map((file) => {
@@ -109,25 +141,24 @@ export default function ViewImagesView() {
     return blob;
   };
 
-  useEffect(() => {
-    const subscription = EndpointService.subscribeImageUpdates()
+  const subscription = useRef<Subscription<ImageCacheEvent[]> | null>(null);
+  // 訂閱後再載入快照；伺服器端緩衝溢出時會以錯誤結束訂閱，此時重新同步
+  const resync = () => {
+    snapshotVersion.current = null;
+    pendingEvents.current = [];
+    subscription.current = EndpointService.subscribeImageUpdates(currentRoom())
       .onNext((receiveFiles) => onMessageReceived(receiveFiles))
+      .onError(() => resync())
       .onSubscriptionLost(() => ActionOnLostSubscription.RESUBSCRIBE);
-    EndpointService.downloadFileStrs()
-      .then((uuids: string[]) => {
-        uuids.forEach((uuid: string) => {
-          EndpointService.downloadFile(uuid).then((file) => {
-            if (file) {
-              setFiles((prev) => [...prev, file]);
-            }
-          });
-        });
-      })
-      .catch((error) => {
-        console.error(translate(key`notify.download.fail`), error);
-      });
+    loadSnapshot().catch((error) => {
+      console.error(translate(key`notify.download.fail`), error);
+    });
+  };
+
+  useEffect(() => {
+    resync();
     return () => {
-      subscription.cancel();
+      subscription.current?.cancel();
     };
   }, []);
 
@@ -137,21 +168,11 @@ export default function ViewImagesView() {
 
       let clipboardBlob = blob;
 
-      // 如果不是 PNG，就用 canvas 轉成 PNG
+      // 剪貼簿只接受 PNG，其他格式由伺服器轉檔並快取
       if (blob.type !== 'image/png') {
-        const img = await createImageBitmap(blob);
-        const canvas = document.createElement('canvas');
-        canvas.width = img.width;
-        canvas.height = img.height;
-        const ctx = canvas.getContext('2d');
-        if (!ctx) throw new Error('無法取得 Canvas 上下文');
-        ctx.drawImage(img, 0, 0);
-        clipboardBlob = await new Promise<Blob>((resolve) => {
-          canvas.toBlob((b) => {
-            if (!b) throw new Error('Canvas 轉 PNG 失敗');
-            resolve(b);
-          }, 'image/png');
-        });
+        const res = await fetch(`${contextPath}/blob/${uuid}?format=png`);
+        if (!res.ok) throw new Error('轉成 PNG 失敗');
+        clipboardBlob = await res.blob();
       }
 
       await navigator.clipboard.write([new ClipboardItem({ 'image/png': clipboardBlob })]);
@@ -171,7 +192,7 @@ export default function ViewImagesView() {
   };
 
   const deleteImage = async (uuid: string) => {
-    EndpointService.deleteFile(uuid);
+    EndpointService.deleteFile(currentRoom(), uuid);
     // 更新 files
     setFiles((prev) => prev.filter((file) => file.uuid !== uuid));
     Notification.show(translate(key`notify.delete.success`), {
@@ -230,7 +251,7 @@ export default function ViewImagesView() {
     if (!confirm(translate(key`confirm.delete.all`))) {
       return;
     }
-    EndpointService.deleteAllFiles()
+    EndpointService.deleteAllFiles(currentRoom())
       .then(() => {
         setFiles([]);
         imageBlobs.current.clear();
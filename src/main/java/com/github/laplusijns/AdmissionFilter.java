@@ -0,0 +1,212 @@
+package com.github.laplusijns;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Admission control for the expensive calls: uploads ({@code uploadFile} and starting a chunked upload), texts
+ * and OCR each get a token bucket per remote address; sessions are free to create, so they are not used as the
+ * key. Behind a proxy, enable {@code server.forward-headers-strategy} so the address is the client's.
+ *
+ * <p>Requests whose body is read and decoded in memory reserve their length against {@code
+ * jocb.admission.max-inflight-bytes}, and completing a chunked upload reserves the upload's size while it is
+ * probed and stored. Thumbnails are decoded after the request has returned and are bounded by {@link
+ * ThumbnailService}'s own queue and concurrency instead. The filter runs before the dispatcher parses multipart
+ * bodies, so a rejected request is answered with 429 or 503 and a {@code Retry-After} before its bytes are
+ * buffered.
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    enum Operation {
+        UPLOAD,
+        TEXT,
+        OCR
+    }
+
+    /**
+     * @param limited takes a token from the client's bucket
+     * @param buffered reserves its body length against the in-flight budget
+     */
+    record Route(Operation operation, boolean limited, boolean buffered) {}
+
+    record Client(String id, Operation operation) {}
+
+    // Hilla 端點預設掛在 /connect/{endpoint}/{method}
+    private static final Map<String, Route> CONNECT = Map.of(
+            "/connect/EndpointService/uploadFile", new Route(Operation.UPLOAD, true, true),
+            "/connect/EndpointService/uploadText", new Route(Operation.TEXT, true, false),
+            "/connect/OcrEndpointService/ocrImageFile", new Route(Operation.OCR, true, true),
+            "/connect/OcrEndpointService/ocrImageCache", new Route(Operation.OCR, true, false),
+            "/connect/OcrEndpointService/ocrImages", new Route(Operation.OCR, true, false));
+
+    private static final String COMPLETE = "/complete";
+
+    UploadService uploadService;
+    private final boolean enabled;
+    private final JocbProperties.Admission admission;
+    private final long maxInflightBytes;
+    private final long unknownLength;
+    private final AtomicLong inflightBytes = new AtomicLong();
+    private final Cache<Client, TokenBucket> buckets;
+    private final Map<Operation, Counter> rateRejected = new EnumMap<>(Operation.class);
+    private final Map<Operation, Counter> bytesRejected = new EnumMap<>(Operation.class);
+
+    public AdmissionFilter(
+            final UploadService uploadService, final JocbProperties jocbProperties, final MeterRegistry meterRegistry) {
+        super();
+        this.uploadService = uploadService;
+        this.admission = jocbProperties.getAdmission();
+        this.enabled = Boolean.TRUE.equals(admission.getEnabled());
+        this.maxInflightBytes = admission.getMaxInflightBytes();
+        // 沒有 Content-Length 時以一個分段的大小估計
+        this.unknownLength = jocbProperties.getUpload().getChunkSize();
+        // 閒置到桶子補滿後就不需要保留
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .maximumSize(admission.getMaxClients())
+                .build();
+        for (final Operation operation : Operation.values()) {
+            rateRejected.put(operation, rejected(meterRegistry, operation, "rate"));
+            bytesRejected.put(operation, rejected(meterRegistry, operation, "bytes"));
+        }
+        Gauge.builder("jocb.admission.inflight.bytes", inflightBytes, AtomicLong::get)
+                .description("request bytes being read or decoded")
+                .register(meterRegistry);
+        Gauge.builder("jocb.admission.clients", buckets, Cache::estimatedSize)
+                .description("clients with a token bucket")
+                .register(meterRegistry);
+    }
+
+    private static Counter rejected(final MeterRegistry registry, final Operation operation, final String reason) {
+        return Counter.builder("jocb.admission.rejected")
+                .description("requests shed before their body was read")
+                .tag("operation", operation.name().toLowerCase(Locale.ROOT))
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        return !enabled || route(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain)
+            throws ServletException, IOException {
+        final Route route = route(request);
+        if (route == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (route.limited()) {
+            final TokenBucket bucket = buckets.get(
+                    new Client(client(request), route.operation()), key -> new TokenBucket(limit(key.operation())));
+            if (!bucket.tryAcquire()) {
+                rateRejected.get(route.operation()).increment();
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, bucket.retryAfterSeconds(), "rate limit exceeded");
+                return;
+            }
+        }
+        if (!route.buffered()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        final long bytes = bytes(request);
+        if (!reserve(bytes)) {
+            bytesRejected.get(route.operation()).increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, "server busy");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            inflightBytes.addAndGet(-bytes);
+        }
+    }
+
+    private static String path(final HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    @Nullable
+    static Route route(final HttpServletRequest request) {
+        final String path = path(request);
+        final String method = request.getMethod();
+        if ("/upload".equals(path) && "POST".equals(method)) {
+            return new Route(Operation.UPLOAD, true, false);
+        }
+        // 完成時整個檔案會被讀取、探測並寫入 store
+        if (path.startsWith("/upload/") && path.endsWith(COMPLETE) && "POST".equals(method)) {
+            return new Route(Operation.UPLOAD, false, true);
+        }
+        // 分段本身不扣 token，否則大檔案會在中途被擋下
+        if (path.startsWith("/upload/") && "PUT".equals(method)) {
+            return new Route(Operation.UPLOAD, false, true);
+        }
+        return "POST".equals(method) ? CONNECT.get(path) : null;
+    }
+
+    private long bytes(final HttpServletRequest request) {
+        final String path = path(request);
+        if (path.endsWith(COMPLETE)) {
+            return uploadService.size(path.substring("/upload/".length(), path.length() - COMPLETE.length()));
+        }
+        final long length = request.getContentLengthLong();
+        return length < 0 ? unknownLength : length;
+    }
+
+    private static String client(final HttpServletRequest request) {
+        return request.getRemoteAddr();
+    }
+
+    private JocbProperties.RateLimit limit(final Operation operation) {
+        return switch (operation) {
+            case UPLOAD -> admission.getUpload();
+            case TEXT -> admission.getText();
+            case OCR -> admission.getOcr();
+        };
+    }
+
+    /** A request larger than the whole budget is still let through when nothing else is in flight. */
+    private boolean reserve(final long bytes) {
+        while (true) {
+            final long current = inflightBytes.get();
+            if (current > 0 && current + bytes > maxInflightBytes) {
+                return false;
+            }
+            if (inflightBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    private static void reject(
+            final HttpServletResponse response, final HttpStatus status, final long retryAfter, final String message)
+            throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+    }
+}
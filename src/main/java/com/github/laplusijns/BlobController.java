@@ -1,6 +1,11 @@
 package com.github.laplusijns;
 
+import com.github.laplusijns.blob.Blob;
+import com.github.laplusijns.blob.BlobResource;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -8,26 +13,35 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+/**
+ * Blobs are returned as {@link Resource} bodies: Spring MVC answers {@code If-None-Match} with 304 from the
+ * {@code ETag} and {@code Range} requests with 206 regions, streaming straight from the {@link Blob}. Adding
+ * {@code format} (png / jpeg / webp) or {@code w} (width in pixels) returns a {@link VariantService} copy instead.
+ */
 @RestController
 @RequestMapping("/blob")
 public class BlobController {
 
     ImageCache imageCache;
+    VariantService variantService;
     long imageMaxAge;
 
-    public BlobController(final ImageCache imageCache, final JocbProperties jocbProperties) {
+    public BlobController(
+            final ImageCache imageCache, final VariantService variantService, final JocbProperties jocbProperties) {
         super();
         this.imageCache = imageCache;
+        this.variantService = variantService;
         this.imageMaxAge = jocbProperties
                 .getImageTimeout()
                 .getUnit()
                 .toSeconds(jocbProperties.getImageTimeout().getValue());
     }
 
-    @GetMapping("/{uuid}")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable final String uuid) {
+    @GetMapping(value = "/{uuid}", params = {"!format", "!w"})
+    public ResponseEntity<Resource> downloadFile(@PathVariable final String uuid) {
         final FileObject file = imageCache.file(uuid);
         if (file == null) {
             return ResponseEntity.notFound().build();
@@ -38,17 +52,60 @@ public class BlobController {
 
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition.toString())
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentType(mediaType(file.contentType()))
+                .eTag(file.blob().digest())
                 .header(HttpHeaders.CACHE_CONTROL, "max-age=" + imageMaxAge + ", immutable")
-                .body(file.bytes());
+                .body(new BlobResource(file.blob(), file.originalFilename()));
+    }
+
+    @GetMapping("/{uuid}")
+    public CompletableFuture<ResponseEntity<Resource>> downloadVariant(
+            @PathVariable final String uuid,
+            @RequestParam(required = false) final String format,
+            @RequestParam(name = "w", required = false) final Integer width) {
+        final VariantService.Format target;
+        try {
+            target = format == null ? null : VariantService.Format.of(format);
+        } catch (IllegalArgumentException _) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        if (width != null && width < 1) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        return variantService.variant(uuid, target, width).thenApply(variant -> {
+            if (variant == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(variant.format().contentType()))
+                    .eTag(variant.digest())
+                    .header(HttpHeaders.CACHE_CONTROL, "max-age=" + imageMaxAge + ", immutable")
+                    .body(new ByteArrayResource(variant.bytes()));
+        });
     }
 
     @GetMapping("/thumbnail/{uuid}")
-    public ResponseEntity<byte[]> downloadFile2(@PathVariable final String uuid) {
-        final byte[] bs = imageCache.thumbnail(uuid);
+    public ResponseEntity<Resource> downloadFile2(@PathVariable final String uuid) {
+        final FileObject file = imageCache.file(uuid);
+        if (file == null || file.thumbnail() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        final Blob blob = file.thumbnail().blob();
         return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentType(MediaType.IMAGE_JPEG)
+                .eTag(blob.digest())
                 .header(HttpHeaders.CACHE_CONTROL, "max-age=" + imageMaxAge + ", immutable")
-                .body(bs);
+                .body(new BlobResource(blob, null));
+    }
+
+    private static MediaType mediaType(final String contentType) {
+        if (contentType == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (IllegalArgumentException _) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
     }
 }
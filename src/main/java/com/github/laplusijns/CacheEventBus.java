@@ -0,0 +1,140 @@
+package com.github.laplusijns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+/**
+ * Event fan-out shared by {@link ImageCache} and {@link TextCache}.
+ *
+ * <p>Producers number each event with the next version as they offer it to an MPSC queue; numbering and offering
+ * happen together, so queue order is version order. Producers only enqueue: whichever moves the work-in-progress
+ * counter off zero schedules the drain on {@code boundedElastic}, so compaction and delivery never run under a
+ * cache or room lock and a slow subscriber cannot stall writers. There is a single total order per cache: versions are strictly
+ * increasing in emission order, and {@link #version()} covers every event already published, drained or not.
+ * The caches publish from inside the per-key atomic operation (Caffeine {@code compute} or the eviction
+ * listener), so events for one key are emitted in the order the mutations were applied.
+ *
+ * <p>Batches are compacted once and multicast to every subscriber. The window adapts to load: the first event
+ * after a quiet window is flushed immediately, later ones are held until the window elapses, and a batch that
+ * reaches {@code maxBatch} events is flushed right away.
+ *
+ * <p>Events are never dropped silently: each subscriber gets a bounded buffer of batches, and a subscriber that
+ * overflows it is terminated with an error and counted in {@link #dropped()} so the client can resubscribe and
+ * reload a snapshot.
+ */
+final class CacheEventBus<E> {
+
+    // 排程的 flush 也走同一個佇列，由 drain 迴圈處理，batch 因此只會被單一執行緒存取
+    private static final Object FLUSH = new Object();
+
+    private final Queue<Object> queue = Queues.unboundedMultiproducer().get();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final Sinks.Many<List<E>> sink = Sinks.many().multicast().directBestEffort();
+    private final Scheduler scheduler = Schedulers.boundedElastic();
+    private final Function<List<E>, List<E>> compactor;
+    private final int bufferSize;
+    private final long windowNanos;
+    private final int maxBatch;
+
+    private List<E> batch = new ArrayList<>();
+    private long lastFlush;
+    private boolean flushScheduled;
+
+    CacheEventBus(final JocbProperties.Events properties, final Function<List<E>, List<E>> compactor) {
+        this.compactor = compactor;
+        this.bufferSize = properties.getBufferSize();
+        this.windowNanos = properties.getWindow().toNanos();
+        this.maxBatch = Math.max(1, properties.getMaxBatch());
+        this.lastFlush = System.nanoTime() - windowNanos;
+    }
+
+    void publish(final LongFunction<E> event) {
+        // 編號與入列需一起完成，否則較小的版本可能排在較大的之後
+        synchronized (queue) {
+            queue.offer(event.apply(version.incrementAndGet()));
+        }
+        signal();
+    }
+
+    private void signal() {
+        if (wip.getAndIncrement() == 0) {
+            scheduler.schedule(this::drain);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        int missed = 1;
+        do {
+            Object next;
+            while ((next = queue.poll()) != null) {
+                if (next == FLUSH) {
+                    flushScheduled = false;
+                    emit();
+                    continue;
+                }
+                batch.add((E) next);
+                if (batch.size() >= maxBatch || (!flushScheduled && System.nanoTime() - lastFlush >= windowNanos)) {
+                    emit();
+                } else if (!flushScheduled) {
+                    flushScheduled = true;
+                    final long delay = Math.max(0, lastFlush + windowNanos - System.nanoTime());
+                    scheduler.schedule(
+                            () -> {
+                                queue.offer(FLUSH);
+                                signal();
+                            },
+                            delay,
+                            TimeUnit.NANOSECONDS);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit() {
+        lastFlush = System.nanoTime();
+        if (batch.isEmpty()) {
+            return;
+        }
+        final List<E> compacted = compactor.apply(batch);
+        batch = new ArrayList<>();
+        if (!compacted.isEmpty()) {
+            // 每個訂閱者的緩衝在 flux() 內，溢出在那裡計數
+            sink.tryEmitNext(compacted);
+        }
+    }
+
+    /** Version of the last published event. */
+    long version() {
+        return version.get();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    int subscribers() {
+        return sink.currentSubscriberCount();
+    }
+
+    Flux<List<E>> flux() {
+        return sink.asFlux()
+                .onBackpressureBuffer(bufferSize, _ -> dropped.increment(), BufferOverflowStrategy.ERROR);
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.laplusijns;
+
+/**
+ * Write-behind hook the caches call on every mutation. Restored entries are put back through
+ * {@link ImageCache#restore(FileObject)} / {@link TextCache#restore(TextObject)} and are not journaled again.
+ * Entries dropped for capacity go through the {@code *Evict} hooks, which default to the matching delete.
+ *
+ * <p>Put, update, delete and evict hooks run inside the cache's atomic operation on the key, so records of one key
+ * reach the journal in the same order as the cache applied them. Implementations must hand work off, not block.
+ */
+public interface CacheJournal {
+
+    CacheJournal NONE = new CacheJournal() {};
+
+    /** Calls {@code first}, then {@code second}, for every mutation. */
+    static CacheJournal of(final CacheJournal first, final CacheJournal second) {
+        if (first == NONE) {
+            return second;
+        }
+        return new CacheJournal() {
+            @Override
+            public void imagePut(final FileObject fileObject) {
+                first.imagePut(fileObject);
+                second.imagePut(fileObject);
+            }
+
+            @Override
+            public void imageUpdate(final FileObject fileObject) {
+                first.imageUpdate(fileObject);
+                second.imageUpdate(fileObject);
+            }
+
+            @Override
+            public void imageDelete(final String room, final String uuid) {
+                first.imageDelete(room, uuid);
+                second.imageDelete(room, uuid);
+            }
+
+            @Override
+            public void imageEvict(final FileObject fileObject) {
+                first.imageEvict(fileObject);
+                second.imageEvict(fileObject);
+            }
+
+            @Override
+            public void imageClear(final String room) {
+                first.imageClear(room);
+                second.imageClear(room);
+            }
+
+            @Override
+            public void textPut(final TextObject textObject) {
+                first.textPut(textObject);
+                second.textPut(textObject);
+            }
+
+            @Override
+            public void textDelete(final String room, final String id) {
+                first.textDelete(room, id);
+                second.textDelete(room, id);
+            }
+
+            @Override
+            public void textEvict(final String room, final String id) {
+                first.textEvict(room, id);
+                second.textEvict(room, id);
+            }
+
+            @Override
+            public void textClear(final String room) {
+                first.textClear(room);
+                second.textClear(room);
+            }
+        };
+    }
+
+    default void imagePut(final FileObject fileObject) {}
+
+    default void imageUpdate(final FileObject fileObject) {}
+
+    default void imageDelete(final String room, final String uuid) {}
+
+    default void imageEvict(final FileObject fileObject) {
+        imageDelete(fileObject.room(), fileObject.uuid());
+    }
+
+    /** Every image of {@code room} was removed. */
+    default void imageClear(final String room) {}
+
+    default void textPut(final TextObject textObject) {}
+
+    default void textDelete(final String room, final String id) {}
+
+    default void textEvict(final String room, final String id) {
+        textDelete(room, id);
+    }
+
+    /** Every text of {@code room} was removed. */
+    default void textClear(final String room) {}
+}
@@ -2,21 +2,20 @@ package com.github.laplusijns;
 
 import com.github.laplusijns.JocbProperties.ImageTimeout;
 import com.github.laplusijns.JocbProperties.TextTimeout;
+import com.github.laplusijns.blob.Blob;
 import com.vaadin.flow.i18n.I18NProvider;
 import com.vaadin.flow.server.VaadinService;
 import com.vaadin.flow.server.auth.AnonymousAllowed;
 import com.vaadin.hilla.Endpoint;
 import com.vaadin.hilla.EndpointSubscription;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
-import java.awt.image.BufferedImage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
-import javax.imageio.ImageIO;
+import java.util.concurrent.TimeUnit;
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
 import org.springframework.web.multipart.MultipartFile;
@@ -25,60 +24,80 @@ import org.springframework.web.multipart.MultipartFile;
 @AnonymousAllowed
 public class EndpointService {
 
+    static final int MAX_PAGE_SIZE = 500;
+
     ImageCache imageCache;
     TextCache textCache;
+    ThumbnailService thumbnailService;
     I18NProvider i18nProvider;
     private List<LocaleInfo> localeInfos;
-    Boolean enableThumbnail;
-    Integer sizeThumbnail;
     TextTimeout textTimeout;
     ImageTimeout imageTimeout;
+    private final Timer readTimer;
+    private final Timer probeTimer;
+    private final Timer storeTimer;
 
     public EndpointService(
             final ImageCache imageCache,
             final TextCache textCache,
+            final ThumbnailService thumbnailService,
             final I18NProvider i18nProvider,
-            final JocbProperties jocbProperties) {
+            final JocbProperties jocbProperties,
+            final MeterRegistry meterRegistry) {
         super();
         this.imageCache = imageCache;
         this.textCache = textCache;
+        this.thumbnailService = thumbnailService;
         this.i18nProvider = i18nProvider;
         this.localeInfos = i18nProvider.getProvidedLocales().stream()
                 .map(t -> new LocaleInfo(t.getDisplayLanguage(t), t.toString()))
                 .toList();
-        this.enableThumbnail = jocbProperties.getEnableThumbnail();
-        this.sizeThumbnail = jocbProperties.getSizeThumbnail();
         this.textTimeout = jocbProperties.getTextTimeout();
         this.imageTimeout = jocbProperties.getImageTimeout();
+        this.readTimer = JocbMetrics.uploadStage(meterRegistry, "read");
+        this.probeTimer = JocbMetrics.uploadStage(meterRegistry, "probe");
+        this.storeTimer = JocbMetrics.uploadStage(meterRegistry, "store");
     }
 
+    /**
+     * Uploads into {@code room}; every room-scoped method takes a room name, blank meaning {@link Room#DEFAULT}.
+     * {@code ttl} asks for a lifetime in seconds within the configured bounds, {@code null} for the default.
+     */
     @NonNull
-    public String uploadFile(@NonNull final MultipartFile file) throws IOException {
+    public String uploadFile(
+            @Nullable final String room, @NonNull final MultipartFile file, @Nullable final Long ttl)
+            throws IOException {
+        final String name = Room.of(room);
 
         final String uuid = UUID.randomUUID().toString();
         final String contentType = file.getContentType();
+        final long start = System.nanoTime();
         final byte[] fileBytes = file.getBytes();
+        final long read = System.nanoTime();
+        readTimer.record(read - start, TimeUnit.NANOSECONDS);
 
-        Integer width = null;
-        Integer height = null;
-        FileObject.Thumbnail thumbnail = null;
-
-        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(fileBytes));
-
-        if (image != null) {
-            width = image.getWidth();
-            height = image.getHeight();
-            if (Boolean.TRUE.equals(enableThumbnail)) {
-                thumbnail = createThumbnail(image);
-            }
-        }
+        final ImageProbe.Size size = ImageProbe.probe(new ByteArrayInputStream(fileBytes));
+        probeTimer.record(System.nanoTime() - read, TimeUnit.NANOSECONDS);
+        final Blob blob = storeTimer.record(() -> imageCache.store(fileBytes));
 
-        final long expired = System.currentTimeMillis() + imageTimeout.getUnit().toMillis(imageTimeout.getValue());
+        final long expired = imageTimeout.expiredAt(ttl);
 
+        // 尺寸只讀檔頭，縮圖由 ThumbnailService 在背景補上
         final FileObject fileObject = new FileObject(
-                expired, file.getOriginalFilename(), fileBytes, uuid, width, height, contentType, thumbnail);
+                expired,
+                file.getOriginalFilename(),
+                blob,
+                uuid,
+                size == null ? null : size.width(),
+                size == null ? null : size.height(),
+                contentType,
+                null,
+                name);
 
         imageCache.put(fileObject);
+        if (size != null && thumbnailService.enabled()) {
+            thumbnailService.submit(fileObject);
+        }
 
         return "%s_%d_%s".formatted(file.getOriginalFilename(), file.getSize(), uuid);
     }
@@ -94,75 +113,76 @@ public class EndpointService {
     }
 
     @NonNull
-    public Collection<@NonNull String> downloadFileStrs() {
-        return imageCache.keys();
-    }
-
-    public void deleteFile(@NonNull final String uuid) {
-        imageCache.delete(uuid);
+    public List<@NonNull FileObject> downloadFiles(
+            @Nullable final String room, @NonNull final List<@NonNull String> uuids) {
+        return imageCache.files(Room.of(room), uuids);
     }
 
-    public void deleteAllFiles() {
-        imageCache.deleteAllFiles();
+    @NonNull
+    public FilePage filePage(@Nullable final String room, @Nullable final String cursor, final int limit) {
+        return imageCache.page(Room.of(room), cursor, Math.clamp(limit, 1, MAX_PAGE_SIZE));
     }
 
     @NonNull
-    public TextObject uploadText(@NonNull final String text) {
-        final long expired = System.currentTimeMillis() + textTimeout.getUnit().toMillis(textTimeout.getValue());
-        final TextObject textObject = new TextObject(expired, text);
-        textCache.put(textObject);
-        return textObject;
+    public Collection<@NonNull String> downloadFileStrs(@Nullable final String room) {
+        return imageCache.keys(Room.of(room));
     }
 
-    public void deleteText(@NonNull final String text) {
-        textCache.delete(text);
+    public void deleteFile(@Nullable final String room, @NonNull final String uuid) {
+        imageCache.delete(Room.of(room), uuid);
     }
 
-    public void deleteAllTexts() {
-        textCache.deleteAllTexts();
+    public void deleteAllFiles(@Nullable final String room) {
+        imageCache.deleteAllFiles(Room.of(room));
     }
 
     @NonNull
-    public Collection<@NonNull TextObject> downloadTexts() {
-        return textCache.keys();
+    public TextSummary uploadText(
+            @Nullable final String room, @NonNull final String text, @Nullable final Long ttl) {
+        return textCache.put(Room.of(room), text, textTimeout.expiredAt(ttl));
     }
 
-    @NonNull
-    public String contextPath() {
-        return VaadinService.getCurrentRequest().getContextPath();
+    public void deleteText(@Nullable final String room, @NonNull final String id) {
+        textCache.delete(Room.of(room), id);
     }
 
-    @NonNull
-    public EndpointSubscription<@NonNull List<@NonNull ImageCacheEvent>> subscribeImageUpdates() {
-        return EndpointSubscription.of(imageCache.sub(), () -> {});
+    public void deleteAllTexts(@Nullable final String room) {
+        textCache.deleteAllTexts(Room.of(room));
     }
 
     @NonNull
-    public EndpointSubscription<@NonNull List<@NonNull TextCacheEvent>> subscribeTextUpdates() {
-        return EndpointSubscription.of(textCache.sub(), () -> {});
+    public Collection<@NonNull TextSummary> downloadTexts(@Nullable final String room) {
+        return textCache.keys(Room.of(room));
     }
 
-    private FileObject.Thumbnail createThumbnail(final BufferedImage original) throws IOException {
-        final int MAX_SIZE = this.sizeThumbnail;
-
-        final int originalWidth = original.getWidth();
-        final int originalHeight = original.getHeight();
-
-        final float scale = Math.min((float) MAX_SIZE / originalWidth, (float) MAX_SIZE / originalHeight);
-
-        final int thumbWidth = Math.round(originalWidth * scale);
-        final int thumbHeight = Math.round(originalHeight * scale);
+    @NonNull
+    public TextSearchPage searchTexts(
+            @Nullable final String room, @NonNull final String query, final int offset, final int limit) {
+        final List<@NonNull TextSummary> matches = textCache.search(Room.of(room), query);
+        final int from = Math.clamp(offset, 0, matches.size());
+        final int to = Math.min(matches.size(), from + Math.clamp(limit, 1, MAX_PAGE_SIZE));
+        return new TextSearchPage(List.copyOf(matches.subList(from, to)), matches.size());
+    }
 
-        final BufferedImage thumbnailImage = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_RGB);
+    @Nullable
+    public TextObject downloadText(@Nullable final String room, @NonNull final String id) {
+        return textCache.text(Room.of(room), id);
+    }
 
-        final Graphics2D g2d = thumbnailImage.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(original, 0, 0, thumbWidth, thumbHeight, null);
-        g2d.dispose();
+    @NonNull
+    public String contextPath() {
+        return VaadinService.getCurrentRequest().getContextPath();
+    }
 
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(thumbnailImage, "jpg", baos);
+    @NonNull
+    public EndpointSubscription<@NonNull List<@NonNull ImageCacheEvent>> subscribeImageUpdates(
+            @Nullable final String room) {
+        return EndpointSubscription.of(imageCache.sub(Room.of(room)), () -> {});
+    }
 
-        return new FileObject.Thumbnail(thumbWidth, thumbHeight, baos.toByteArray());
+    @NonNull
+    public EndpointSubscription<@NonNull List<@NonNull TextCacheEvent>> subscribeTextUpdates(
+            @Nullable final String room) {
+        return EndpointSubscription.of(textCache.sub(Room.of(room)), () -> {});
     }
 }
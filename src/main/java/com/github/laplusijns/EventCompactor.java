@@ -0,0 +1,73 @@
+package com.github.laplusijns;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Collapses one batch of cache events per key.
+ *
+ * <p>Everything before the last {@code DELETE_ALL} is dropped. For each key the remaining events reduce to at
+ * most a {@code DELETE} followed by an {@code ADD}/{@code UPDATE}: an upsert that is later deleted only leaves
+ * the delete, and an update following an upsert is merged into it. Keys keep the order of their first event.
+ */
+final class EventCompactor<E> implements Function<List<E>, List<E>> {
+
+    private final Function<E, String> key;
+    private final Function<E, EventType> type;
+    private final BinaryOperator<E> merge;
+
+    /**
+     * @param merge combines an earlier upsert with a later {@code UPDATE} for the same key, keeping the earlier
+     *     event's type
+     */
+    EventCompactor(final Function<E, String> key, final Function<E, EventType> type, final BinaryOperator<E> merge) {
+        this.key = key;
+        this.type = type;
+        this.merge = merge;
+    }
+
+    @Override
+    public List<E> apply(final List<E> batch) {
+        int start = 0;
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (type.apply(batch.get(i)) == EventType.DELETE_ALL) {
+                start = i;
+                break;
+            }
+        }
+        final List<E> compacted = new ArrayList<>();
+        if (start < batch.size() && type.apply(batch.get(start)) == EventType.DELETE_ALL) {
+            compacted.add(batch.get(start++));
+        }
+        final Map<String, Slot<E>> slots = new LinkedHashMap<>();
+        for (final E event : batch.subList(start, batch.size())) {
+            final Slot<E> slot = slots.computeIfAbsent(key.apply(event), _ -> new Slot<>());
+            switch (type.apply(event)) {
+                case DELETE -> {
+                    slot.delete = event;
+                    slot.upsert = null;
+                }
+                case UPDATE -> slot.upsert = slot.upsert == null ? event : merge.apply(slot.upsert, event);
+                default -> slot.upsert = event;
+            }
+        }
+        for (final Slot<E> slot : slots.values()) {
+            if (slot.delete != null) {
+                compacted.add(slot.delete);
+            }
+            if (slot.upsert != null) {
+                compacted.add(slot.upsert);
+            }
+        }
+        return compacted;
+    }
+
+    private static final class Slot<E> {
+        private E delete;
+        private E upsert;
+    }
+}
@@ -2,6 +2,7 @@ package com.github.laplusijns;
 
 public enum EventType {
     ADD,
+    UPDATE,
     DELETE,
     DELETE_ALL
 }
@@ -0,0 +1,37 @@
+package com.github.laplusijns;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Expires entries at their own {@code expired} timestamp (epoch millis), so replacing an entry or restoring it
+ * from the journal does not restart its lifetime.
+ */
+public final class ExpiredAt<K, V> implements Expiry<K, V> {
+
+    private final ToLongFunction<V> expired;
+
+    public ExpiredAt(final ToLongFunction<V> expired) {
+        this.expired = expired;
+    }
+
+    @Override
+    public long expireAfterCreate(final K key, final V value, final long currentTime) {
+        return remaining(value);
+    }
+
+    @Override
+    public long expireAfterUpdate(final K key, final V value, final long currentTime, final long currentDuration) {
+        return remaining(value);
+    }
+
+    @Override
+    public long expireAfterRead(final K key, final V value, final long currentTime, final long currentDuration) {
+        return currentDuration;
+    }
+
+    private long remaining(final V value) {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expired.applyAsLong(value) - System.currentTimeMillis()));
+    }
+}
@@ -1,17 +1,19 @@
 package com.github.laplusijns;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.laplusijns.blob.Blob;
 
 public record FileObject(
         Long expired,
         String originalFilename,
-        @JsonIgnore byte[] bytes,
+        @JsonIgnore Blob blob,
         String uuid,
         Integer width,
         Integer height,
         String contentType,
-        Thumbnail thumbnail) {
+        Thumbnail thumbnail,
+        String room) {
 
-    static record Thumbnail(
-            Integer width, Integer height, @JsonIgnore byte[] bytes) {}
+    public static record Thumbnail(
+            Integer width, Integer height, @JsonIgnore Blob blob) {}
 }
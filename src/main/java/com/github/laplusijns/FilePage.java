@@ -0,0 +1,13 @@
+package com.github.laplusijns;
+
+import java.util.List;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * One page of image metadata ordered by expiry. {@code version} was read once no mutation was in flight, so every
+ * event up to it is reflected in the page; applying every {@link ImageCacheEvent} with a greater version on top
+ * of the pages yields the current state.
+ */
+public record FilePage(
+        @NonNull List<@NonNull FileObject> files, @Nullable String nextCursor, long version) {}
@@ -2,80 +2,412 @@ package com.github.laplusijns;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import java.time.Duration;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.laplusijns.JocbProperties.ImageTimeout;
+import com.github.laplusijns.blob.Blob;
+import com.github.laplusijns.blob.BlobStore;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
-import reactor.util.concurrent.Queues;
 
+/**
+ * Images per room: every room is a {@link Partition} with its own Caffeine cache, quota and event stream, so
+ * uploads in one room never evict another room's entries and events only reach that room's subscribers. Uuids
+ * are unique across rooms, lookups by uuid search every partition.
+ */
 @Service
 public class ImageCache {
 
-    private final Sinks.Many<ImageCacheEvent> sink =
-            Sinks.many().multicast().onBackpressureBuffer(Queues.SMALL_BUFFER_SIZE, false);
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Cache<String, FileObject> fileCache;
+    private final RoomMap<Partition> rooms;
+    private final ImageTimeout imageTimeout;
+    private final JocbProperties.Events eventProperties;
+    private final BlobStore blobStore;
+    // 原圖 digest -> 已產生的縮圖，相同內容的上傳可直接共用
+    private final Map<String, FileObject.Thumbnail> thumbnails = new ConcurrentHashMap<>();
+    private volatile CacheJournal journal = CacheJournal.NONE;
+    // 已回收房間的累計值，讓 counter 不因回收而減少；只在 RoomMap 的鎖內存取
+    private CacheStats reclaimedStats = CacheStats.empty();
+    private long reclaimedDropped;
 
-    public ImageCache(final JocbProperties jocbProperties) {
-        this.fileCache = Caffeine.newBuilder()
-                .expireAfterWrite(
-                        jocbProperties.getImageTimeout().getValue(),
-                        jocbProperties.getImageTimeout().getUnit())
-                .maximumSize(jocbProperties.getImageTimeout().getMaxSize())
-                .removalListener((key, value, cause) -> {
-                    if (value != null && cause.wasEvicted()) {
-                        executor.submit(() -> sink.tryEmitNext(ImageCacheEvent.delete(key.toString())));
-                    }
-                })
-                .build();
+    // 粗估 record 本身、字串欄位與 Caffeine node 的額外負擔
+    static final int ENTRY_OVERHEAD = 512;
+
+    public ImageCache(final JocbProperties jocbProperties, final BlobStore blobStore) {
+        this.blobStore = blobStore;
+        this.imageTimeout = jocbProperties.getImageTimeout();
+        this.eventProperties = jocbProperties.getEvents();
+        this.rooms = new RoomMap<>(jocbProperties.getRooms(), Partition::new);
+    }
+
+    final class Partition extends RoomMap.Partition {
+
+        private final CacheEventBus<ImageCacheEvent> events;
+        private final Cache<String, FileObject> fileCache;
+        // 變更持有 read lock；page 取 write lock 讀版本，確保該版本以前的事件都已反映在 map 上
+        private final ReadWriteLock mutations = new ReentrantReadWriteLock();
+
+        private Partition(final String room) {
+            this.events = new CacheEventBus<>(
+                    eventProperties,
+                    new EventCompactor<>(ImageCacheEvent::uuid, ImageCacheEvent::type, ImageCacheEvent::merge));
+            final Caffeine<String, FileObject> builder = Caffeine.newBuilder()
+                    .expireAfter(new ExpiredAt<String, FileObject>(FileObject::expired))
+                    // 到期時主動移除，閒置的實例也會準時釋放 payload 並發出 DELETE
+                    .scheduler(Scheduler.systemScheduler())
+                    // 容量淘汰在寫入的執行緒上完成，仍在該次變更的 read lock 內
+                    .executor(Runnable::run)
+                    .recordStats();
+            if (imageTimeout.getMaxBytes() > 0) {
+                builder.maximumWeight(imageTimeout.getMaxBytes())
+                        .weigher((final String _, final FileObject value) -> weigh(value));
+            } else {
+                builder.maximumSize(imageTimeout.getMaxSize());
+            }
+            this.fileCache = builder
+                    // 同步執行於移除該 key 的原子操作內，確保同一 key 的事件與 journal 順序
+                    .evictionListener((key, value, cause) -> {
+                        if (value != null) {
+                            events.publish(v -> ImageCacheEvent.delete(key, v));
+                            if (cause == RemovalCause.SIZE) {
+                                journal.imageEvict(value);
+                            }
+                        }
+                    })
+                    .removalListener((key, value, cause) -> {
+                        if (value == null) {
+                            return;
+                        }
+                        // REPLACED 只是更新 metadata，payload 仍由新的 entry 持有
+                        if (cause != RemovalCause.REPLACED) {
+                            release(value);
+                        }
+                    })
+                    .build();
+        }
+
+        @Override
+        boolean idle() {
+            fileCache.cleanUp();
+            return fileCache.estimatedSize() == 0 && events.subscribers() == 0;
+        }
+
+        @Override
+        void reclaimed() {
+            reclaimedStats = reclaimedStats.plus(fileCache.stats());
+            reclaimedDropped += events.dropped();
+        }
+
+        private <T> T mutate(final Supplier<T> mutation) {
+            mutations.readLock().lock();
+            try {
+                return mutation.get();
+            } finally {
+                mutations.readLock().unlock();
+            }
+        }
+
+        /** Version whose events are all visible in the map: no mutation is running while it is read. */
+        private long settledVersion() {
+            mutations.writeLock().lock();
+            try {
+                return events.version();
+            } finally {
+                mutations.writeLock().unlock();
+            }
+        }
+    }
+
+    static int weigh(final FileObject fileObject) {
+        long weight = ENTRY_OVERHEAD;
+        if (fileObject.blob() != null) {
+            weight += fileObject.blob().size();
+        }
+        if (fileObject.thumbnail() != null && fileObject.thumbnail().blob() != null) {
+            weight += fileObject.thumbnail().blob().size();
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Live weighted size in bytes when {@code jocb.image-timeout.max-bytes} is set, otherwise the entry count.
+     */
+    public long weightedSize() {
+        return rooms.all().stream()
+                .mapToLong(p -> p.fileCache
+                        .policy()
+                        .eviction()
+                        .flatMap(Policy.Eviction::weightedSize)
+                        .orElseGet(p.fileCache::estimatedSize))
+                .sum();
+    }
+
+    public Blob store(final byte[] bytes) {
+        return blobStore.write(bytes);
+    }
+
+    /** Stores a spooled upload; the file may be moved into the store, delete whatever is left afterwards. */
+    public Blob store(final Path file, final String digest) {
+        return blobStore.write(file, digest);
+    }
+
+    private void release(final FileObject fileObject) {
+        if (fileObject.blob() != null && blobStore.release(fileObject.blob())) {
+            thumbnails.remove(fileObject.blob().digest());
+        }
+        if (fileObject.thumbnail() != null && fileObject.thumbnail().blob() != null) {
+            blobStore.release(fileObject.thumbnail().blob());
+        }
+    }
+
+    /** Hit, miss and eviction counts summed over all rooms. */
+    CacheStats stats() {
+        return rooms.stable(() ->
+                rooms.all().stream().map(p -> p.fileCache.stats()).reduce(reclaimedStats, CacheStats::plus));
+    }
+
+    public long estimatedSize() {
+        return rooms.all().stream().mapToLong(p -> p.fileCache.estimatedSize()).sum();
+    }
+
+    public int rooms() {
+        return rooms.size();
+    }
+
+    /** Every entry in every room. */
+    public List<@NonNull FileObject> all() {
+        return rooms.all().stream()
+                .flatMap(p -> p.fileCache.asMap().values().stream())
+                .toList();
     }
 
-    public Collection<@NonNull FileObject> all() {
-        return fileCache.asMap().values();
+    public Collection<@NonNull FileObject> all(final String room) {
+        final Partition partition = rooms.find(room);
+        return partition == null ? List.of() : partition.fileCache.asMap().values();
     }
 
+    /**
+     * Adds {@code journal} after the ones already registered. Hooks run inside the atomic operation on the key, so
+     * the journal sees mutations of one key in the same order as the cache; they must not block.
+     */
+    public synchronized void journal(final CacheJournal journal) {
+        this.journal = CacheJournal.of(this.journal, journal);
+    }
+
+    /** Stores {@code fileObject} in its room; throws {@link IllegalStateException} when no room can be created. */
     public void put(final FileObject fileObject) {
-        fileCache.put(fileObject.uuid(), fileObject);
-        executor.submit(() -> sink.tryEmitNext(ImageCacheEvent.add(fileObject)));
+        rooms.with(fileObject.room(), p -> p.mutate(() -> p.fileCache.asMap().compute(fileObject.uuid(), (_, _) -> {
+            p.events.publish(v -> ImageCacheEvent.add(fileObject, v));
+            journal.imagePut(fileObject);
+            return fileObject;
+        })));
+    }
+
+    public void restore(final FileObject fileObject) {
+        rooms.with(fileObject.room(), p -> p.mutate(() -> p.fileCache.asMap().compute(fileObject.uuid(), (_, existing) -> {
+            if (existing != null) {
+                return existing;
+            }
+            p.events.publish(v -> ImageCacheEvent.add(fileObject, v));
+            return fileObject;
+        })));
+    }
+
+    @Nullable
+    private Partition partitionOf(final String uuid) {
+        for (final Partition partition : rooms.all()) {
+            if (partition.fileCache.asMap().containsKey(uuid)) {
+                return partition;
+            }
+        }
+        return null;
+    }
+
+    public void update(
+            final String uuid, final Integer width, final Integer height, final FileObject.Thumbnail thumbnail) {
+        final Partition partition = partitionOf(uuid);
+        final FileObject updated = partition == null
+                ? null
+                : partition.mutate(() -> partition.fileCache.asMap().computeIfPresent(uuid, (_, f) -> {
+                            final FileObject next = new FileObject(
+                                    f.expired(),
+                                    f.originalFilename(),
+                                    f.blob(),
+                                    f.uuid(),
+                                    width,
+                                    height,
+                                    f.contentType(),
+                                    thumbnail,
+                                    f.room());
+                            partition.events.publish(v -> ImageCacheEvent.update(next, v));
+                            journal.imageUpdate(next);
+                            return next;
+                        }));
+        if (updated == null) {
+            // 處理期間已被刪除
+            if (thumbnail != null) {
+                blobStore.release(thumbnail.blob());
+            }
+            return;
+        }
+        if (thumbnail != null) {
+            thumbnails.putIfAbsent(updated.blob().digest(), thumbnail);
+        }
     }
 
-    public void delete(final String uuid) {
-        fileCache.invalidate(uuid);
-        executor.submit(() -> sink.tryEmitNext(ImageCacheEvent.delete(uuid)));
+    /** Thumbnail already rendered for a payload with this digest, with a reference taken for the caller. */
+    public Optional<FileObject.Thumbnail> sharedThumbnail(final String digest) {
+        final FileObject.Thumbnail thumbnail = thumbnails.get(digest);
+        if (thumbnail == null) {
+            return Optional.empty();
+        }
+        final Optional<FileObject.Thumbnail> retained = blobStore
+                .retain(thumbnail.blob().digest())
+                .map(blob -> new FileObject.Thumbnail(thumbnail.width(), thumbnail.height(), blob));
+        if (retained.isEmpty()) {
+            thumbnails.remove(digest, thumbnail);
+        }
+        return retained;
+    }
+
+    public void delete(final String room, final String uuid) {
+        final Partition partition = rooms.find(room);
+        if (partition == null) {
+            return;
+        }
+        // 即使已過期仍發出 DELETE，讓仍顯示該項目的頁面移除它
+        partition.mutate(() -> partition.fileCache.asMap().compute(uuid, (_, _) -> {
+            partition.events.publish(v -> ImageCacheEvent.delete(uuid, v));
+            journal.imageDelete(room, uuid);
+            return null;
+        }));
     }
 
     public byte[] blob(final String uuid) {
-        final FileObject fileObject = fileCache.getIfPresent(uuid);
-        return fileObject == null ? new byte[] {} : fileObject.bytes();
+        final FileObject fileObject = file(uuid);
+        return fileObject == null ? new byte[] {} : read(fileObject.blob());
     }
 
+    @Nullable
     public FileObject file(final String uuid) {
-        return fileCache.getIfPresent(uuid);
+        for (final Partition partition : rooms.all()) {
+            final FileObject fileObject = partition.fileCache.getIfPresent(uuid);
+            if (fileObject != null) {
+                return fileObject;
+            }
+        }
+        return null;
     }
 
     public byte[] thumbnail(final String uuid) {
-        final FileObject fileObject = fileCache.getIfPresent(uuid);
+        final FileObject fileObject = file(uuid);
         if (fileObject != null && fileObject.thumbnail() != null) {
-            return fileObject.thumbnail().bytes();
+            return read(fileObject.thumbnail().blob());
         }
         return new byte[] {};
     }
 
-    public Collection<String> keys() {
-        return fileCache.asMap().keySet();
+    private static byte[] read(final Blob blob) {
+        try {
+            return blob.bytes();
+        } catch (IllegalStateException | UncheckedIOException _) {
+            // 讀取途中 entry 剛好被移除並釋放
+            return new byte[] {};
+        }
+    }
+
+    /** Version of the last event published in {@code room}. */
+    public long version(final String room) {
+        final Partition partition = rooms.find(room);
+        return partition == null ? 0 : partition.events.version();
+    }
+
+    public long droppedEvents() {
+        return rooms.stable(() -> reclaimedDropped
+                + rooms.all().stream().mapToLong(p -> p.events.dropped()).sum());
+    }
+
+    public int subscribers() {
+        return rooms.all().stream().mapToInt(p -> p.events.subscribers()).sum();
+    }
+
+    public List<FileObject> files(final String room, final Collection<String> uuids) {
+        final Partition partition = rooms.find(room);
+        return partition == null ? List.of() : List.copyOf(partition.fileCache.getAllPresent(uuids).values());
+    }
+
+    /** Entries of {@code room} ordered by {@code (expired, uuid)} after the {@code expired:uuid} cursor. */
+    public FilePage page(final String room, final String cursor, final int limit) {
+        final Partition partition = rooms.find(room);
+        if (partition == null) {
+            return new FilePage(List.of(), null, 0);
+        }
+        final long pageVersion = partition.settledVersion();
+        final Comparator<FileObject> order =
+                Comparator.comparing(FileObject::expired).thenComparing(FileObject::uuid);
+        final FileObject after = cursor == null ? null : parseCursor(cursor);
+        final List<FileObject> files = partition.fileCache.asMap().values().stream()
+                .filter(f -> after == null || order.compare(f, after) > 0)
+                .sorted(order)
+                .limit(limit + 1L)
+                .toList();
+        if (files.size() <= limit) {
+            return new FilePage(files, null, pageVersion);
+        }
+        final FileObject last = files.get(limit - 1);
+        return new FilePage(files.subList(0, limit), last.expired() + ":" + last.uuid(), pageVersion);
     }
 
-    public Flux<List<ImageCacheEvent>> sub() {
-        return sink.asFlux().buffer(Duration.ofSeconds(1l));
+    private static FileObject parseCursor(final String cursor) {
+        final int i = cursor.indexOf(':');
+        if (i < 0) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor);
+        }
+        return new FileObject(
+                Long.parseLong(cursor.substring(0, i)),
+                null,
+                null,
+                cursor.substring(i + 1),
+                null,
+                null,
+                null,
+                null,
+                null);
     }
 
-    public void deleteAllFiles() {
-        fileCache.invalidateAll();
-        executor.submit(() -> sink.tryEmitNext(ImageCacheEvent.deleteAll()));
+    public Collection<String> keys(final String room) {
+        final Partition partition = rooms.find(room);
+        return partition == null ? List.of() : partition.fileCache.asMap().keySet();
+    }
+
+    public Flux<List<ImageCacheEvent>> sub(final String room) {
+        // 房間尚未存在時等到第一次寫入建立它，再接上它的事件
+        return rooms.await(room).flatMapMany(p -> p.events.flux());
+    }
+
+    public void deleteAllFiles(final String room) {
+        final Partition partition = rooms.find(room);
+        if (partition != null) {
+            partition.mutate(() -> {
+                partition.fileCache.invalidateAll();
+                partition.events.publish(ImageCacheEvent::deleteAll);
+                return null;
+            });
+        }
+        journal.imageClear(room);
     }
 }
@@ -4,22 +4,54 @@ import org.jspecify.annotations.NonNull;
 
 public record ImageCacheEvent(
         Long expired,
-        EventType type, // ADD / DELETE
+        EventType type, // ADD / UPDATE / DELETE
         @NonNull String uuid,
         String originalFilename,
         Integer width,
         Integer height,
-        String contentType) {
-    public static ImageCacheEvent add(final FileObject f) {
+        String contentType,
+        FileObject.Thumbnail thumbnail,
+        Long version) {
+    public static ImageCacheEvent add(final FileObject f, final long version) {
+        return of(EventType.ADD, f, version);
+    }
+
+    public static ImageCacheEvent update(final FileObject f, final long version) {
+        return of(EventType.UPDATE, f, version);
+    }
+
+    private static ImageCacheEvent of(final EventType type, final FileObject f, final long version) {
+        return new ImageCacheEvent(
+                f.expired(),
+                type,
+                f.uuid(),
+                f.originalFilename(),
+                f.width(),
+                f.height(),
+                f.contentType(),
+                f.thumbnail(),
+                version);
+    }
+
+    /** This upsert with the fields of a later {@code UPDATE} for the same entry. */
+    ImageCacheEvent merge(final ImageCacheEvent update) {
         return new ImageCacheEvent(
-                f.expired(), EventType.ADD, f.uuid(), f.originalFilename(), f.width(), f.height(), f.contentType());
+                update.expired(),
+                type,
+                uuid,
+                update.originalFilename(),
+                update.width(),
+                update.height(),
+                update.contentType(),
+                update.thumbnail(),
+                update.version());
     }
 
-    public static ImageCacheEvent delete(final String uuid) {
-        return new ImageCacheEvent(null, EventType.DELETE, uuid, null, null, null, null);
+    public static ImageCacheEvent delete(final String uuid, final long version) {
+        return new ImageCacheEvent(null, EventType.DELETE, uuid, null, null, null, null, null, version);
     }
 
-    public static ImageCacheEvent deleteAll() {
-        return new ImageCacheEvent(null, EventType.DELETE_ALL, "", null, null, null, null);
+    public static ImageCacheEvent deleteAll(final long version) {
+        return new ImageCacheEvent(null, EventType.DELETE_ALL, "", null, null, null, null, null, version);
     }
 }
@@ -0,0 +1,85 @@
+package com.github.laplusijns;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Reads image dimensions from the container header (PNG, JPEG, GIF, WebP through TwelveMonkeys, ...) without
+ * decoding pixels, and decodes with source subsampling when only a small rendition is needed.
+ */
+public final class ImageProbe {
+
+    public record Size(int width, int height) {}
+
+    private ImageProbe() {}
+
+    /** Returns {@code null} when no registered reader recognises the header. */
+    @Nullable
+    public static Size probe(final InputStream in) throws IOException {
+        // 明確使用記憶體快取，避免 ImageIO 預設在暫存目錄建立快取檔
+        try (ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+            final ImageReader reader = reader(iis);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                return new Size(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes the first image, skipping source pixels so the result is still at least twice {@code maxEdge} on
+     * the side that limits the scale.
+     */
+    @Nullable
+    public static BufferedImage decode(final InputStream in, final int maxEdge) throws IOException {
+        try (ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+            final ImageReader reader = reader(iis);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                final int width = reader.getWidth(0);
+                final int height = reader.getHeight(0);
+                final ImageReadParam param = reader.getDefaultReadParam();
+                final int period = subsampling(width, height, maxEdge);
+                if (period > 1) {
+                    param.setSourceSubsampling(period, period, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static int subsampling(final int width, final int height, final int maxEdge) {
+        final double scale = Math.min((double) maxEdge / width, (double) maxEdge / height);
+        if (scale >= 0.5) {
+            return 1;
+        }
+        return Math.max(1, (int) (1 / (scale * 2)));
+    }
+
+    @Nullable
+    private static ImageReader reader(final ImageInputStream iis) {
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        final ImageReader reader = readers.next();
+        reader.setInput(iis, true, true);
+        return reader;
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.laplusijns;
+
+import com.github.laplusijns.blob.BlobStore;
+import com.github.laplusijns.blob.DedupBlobStore;
+import com.github.laplusijns.blob.DirectBlobStore;
+import com.github.laplusijns.blob.HeapBlobStore;
+import com.github.laplusijns.blob.MappedFileBlobStore;
+import java.nio.file.Path;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JocbBlobConfig {
+
+    @Bean
+    BlobStore blobStore(final JocbProperties jocbProperties) {
+        final JocbProperties.BlobStorage blobStorage = jocbProperties.getBlobStorage();
+        final BlobStore blobStore =
+                switch (blobStorage.getType()) {
+                    case HEAP -> new HeapBlobStore();
+                    case DIRECT -> new DirectBlobStore();
+                    case MAPPED -> new MappedFileBlobStore(Path.of(blobStorage.getDirectory()));
+                };
+        return Boolean.TRUE.equals(blobStorage.getDedup()) ? new DedupBlobStore(blobStore) : blobStore;
+    }
+}
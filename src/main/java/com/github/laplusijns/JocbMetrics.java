@@ -0,0 +1,87 @@
+package com.github.laplusijns;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/** Cache, event and thumbnail queue meters, published through {@code /actuator/metrics}. */
+@Component
+public class JocbMetrics implements MeterBinder {
+
+    ImageCache imageCache;
+    TextCache textCache;
+    ThumbnailService thumbnailService;
+
+    public JocbMetrics(final ImageCache imageCache, final TextCache textCache, final ThumbnailService thumbnailService) {
+        super();
+        this.imageCache = imageCache;
+        this.textCache = textCache;
+        this.thumbnailService = thumbnailService;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        cache(registry, "image", imageCache::stats, imageCache::estimatedSize);
+        cache(registry, "text", textCache::stats, textCache::estimatedSize);
+        Gauge.builder("jocb.rooms", imageCache, ImageCache::rooms)
+                .description("rooms holding images or image subscribers")
+                .tag("cache", "image")
+                .register(registry);
+        Gauge.builder("jocb.cache.weighted.size", imageCache, ImageCache::weightedSize)
+                .description("bytes held by the image cache, or its entry count without max-bytes")
+                .tag("cache", "image")
+                .register(registry);
+
+        Gauge.builder("jocb.events.subscribers", imageCache, ImageCache::subscribers)
+                .tag("cache", "image")
+                .register(registry);
+        Gauge.builder("jocb.events.subscribers", textCache, TextCache::subscribers)
+                .tag("cache", "text")
+                .register(registry);
+        FunctionCounter.builder("jocb.events.dropped", imageCache, ImageCache::droppedEvents)
+                .description("subscribers disconnected because their event buffer overflowed")
+                .tag("cache", "image")
+                .register(registry);
+        FunctionCounter.builder("jocb.events.dropped", textCache, TextCache::droppedEvents)
+                .description("subscribers disconnected because their event buffer overflowed")
+                .tag("cache", "text")
+                .register(registry);
+
+        Gauge.builder("jocb.thumbnail.queue", thumbnailService, ThumbnailService::pending)
+                .description("thumbnails waiting or rendering")
+                .register(registry);
+    }
+
+    /** Same meters as {@code CaffeineCacheMetrics}, summed over the per-room caches. */
+    private static void cache(
+            final MeterRegistry registry,
+            final String name,
+            final Supplier<CacheStats> stats,
+            final Supplier<Long> size) {
+        FunctionCounter.builder("cache.gets", stats, s -> s.get().hitCount())
+                .tags("cache", name, "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", stats, s -> s.get().missCount())
+                .tags("cache", name, "result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", stats, s -> s.get().evictionCount())
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("cache.size", size, s -> s.get())
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    /** Timer for one stage of the upload pipeline, from reading the request to the rendered thumbnail. */
+    static Timer uploadStage(final MeterRegistry registry, final String stage) {
+        return Timer.builder("jocb.upload")
+                .description("upload pipeline stage")
+                .tag("stage", stage)
+                .register(registry);
+    }
+}
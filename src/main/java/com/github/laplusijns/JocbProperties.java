@@ -1,6 +1,10 @@
 package com.github.laplusijns;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.Nullable;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
@@ -12,6 +16,17 @@ public class JocbProperties {
     private ImageTimeout imageTimeout = new ImageTimeout();
     private Boolean enableThumbnail = Boolean.FALSE;
     private Integer sizeThumbnail = 300;
+    private Integer thumbnailConcurrency = 4;
+    private Integer thumbnailQueueSize = 256;
+    private BlobStorage blobStorage = new BlobStorage();
+    private Persistence persistence = new Persistence();
+    private Events events = new Events();
+    private Ocr ocr = new Ocr();
+    private Upload upload = new Upload();
+    private Cluster cluster = new Cluster();
+    private Rooms rooms = new Rooms();
+    private Variants variants = new Variants();
+    private Admission admission = new Admission();
 
     public TextTimeout getTextTimeout() {
         return textTimeout;
@@ -45,8 +60,99 @@ public class JocbProperties {
         this.sizeThumbnail = sizeThumbnail;
     }
 
+    public Integer getThumbnailConcurrency() {
+        return thumbnailConcurrency;
+    }
+
+    public void setThumbnailConcurrency(final Integer thumbnailConcurrency) {
+        this.thumbnailConcurrency = thumbnailConcurrency;
+    }
+
+    public Integer getThumbnailQueueSize() {
+        return thumbnailQueueSize;
+    }
+
+    public void setThumbnailQueueSize(final Integer thumbnailQueueSize) {
+        this.thumbnailQueueSize = thumbnailQueueSize;
+    }
+
+    public BlobStorage getBlobStorage() {
+        return blobStorage;
+    }
+
+    public void setBlobStorage(final BlobStorage blobStorage) {
+        this.blobStorage = blobStorage;
+    }
+
+    public Persistence getPersistence() {
+        return persistence;
+    }
+
+    public void setPersistence(final Persistence persistence) {
+        this.persistence = persistence;
+    }
+
+    public Events getEvents() {
+        return events;
+    }
+
+    public void setEvents(final Events events) {
+        this.events = events;
+    }
+
+    public Ocr getOcr() {
+        return ocr;
+    }
+
+    public void setOcr(final Ocr ocr) {
+        this.ocr = ocr;
+    }
+
+    public Upload getUpload() {
+        return upload;
+    }
+
+    public void setUpload(final Upload upload) {
+        this.upload = upload;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public void setCluster(final Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    public Rooms getRooms() {
+        return rooms;
+    }
+
+    public void setRooms(final Rooms rooms) {
+        this.rooms = rooms;
+    }
+
+    public Variants getVariants() {
+        return variants;
+    }
+
+    public void setVariants(final Variants variants) {
+        this.variants = variants;
+    }
+
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(final Admission admission) {
+        this.admission = admission;
+    }
+
     public static class TimeoutBase {
         private long value = 20;
+        // 上傳可自訂存活時間的範圍，單位同 value
+        private long minValue = 1;
+        private long maxValue = 1440;
         private long maxSize = 128;
         private TimeUnit unit = TimeUnit.MINUTES;
 
@@ -58,6 +164,39 @@ public class JocbProperties {
             this.value = value;
         }
 
+        public long getMinValue() {
+            return minValue;
+        }
+
+        public void setMinValue(final long minValue) {
+            this.minValue = minValue;
+        }
+
+        public long getMaxValue() {
+            return maxValue;
+        }
+
+        public void setMaxValue(final long maxValue) {
+            this.maxValue = maxValue;
+        }
+
+        /** Longest lifetime an entry can get, in millis. */
+        public long maxTtlMillis() {
+            return unit.toMillis(Math.max(value, maxValue));
+        }
+
+        /**
+         * Expiry for an entry created now that asked to live {@code ttlSeconds}, clamped to
+         * {@code [min-value, max-value]}; {@code value} when it did not ask.
+         */
+        public long expiredAt(@Nullable final Long ttlSeconds) {
+            final long ttl = ttlSeconds == null
+                    ? unit.toMillis(value)
+                    : Math.clamp(
+                            TimeUnit.SECONDS.toMillis(ttlSeconds), unit.toMillis(minValue), unit.toMillis(maxValue));
+            return System.currentTimeMillis() + ttl;
+        }
+
         public long getMaxSize() {
             return maxSize;
         }
@@ -75,7 +214,483 @@ public class JocbProperties {
         }
     }
 
-    public static class TextTimeout extends TimeoutBase {}
+    public static class TextTimeout extends TimeoutBase {
+        private int compressThreshold = 4096;
+
+        public int getCompressThreshold() {
+            return compressThreshold;
+        }
+
+        public void setCompressThreshold(final int compressThreshold) {
+            this.compressThreshold = compressThreshold;
+        }
+    }
+
+    public static class ImageTimeout extends TimeoutBase {
+        private long maxBytes = 0;
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(final long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    public static class BlobStorage {
+        private StorageType type = StorageType.HEAP;
+        private String directory = System.getProperty("java.io.tmpdir") + "/jocb-blobs";
+        private Boolean dedup = Boolean.TRUE;
+
+        public StorageType getType() {
+            return type;
+        }
+
+        public void setType(final StorageType type) {
+            this.type = type;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(final String directory) {
+            this.directory = directory;
+        }
+
+        public Boolean getDedup() {
+            return dedup;
+        }
+
+        public void setDedup(final Boolean dedup) {
+            this.dedup = dedup;
+        }
+    }
+
+    public static class Persistence {
+        private Boolean enabled = Boolean.FALSE;
+        private String directory = System.getProperty("java.io.tmpdir") + "/jocb-journal";
+        private long segmentSize = 64L * 1024 * 1024;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(final Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(final String directory) {
+            this.directory = directory;
+        }
+
+        public long getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(final long segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+    }
+
+    public static class Upload {
+        private String directory = System.getProperty("java.io.tmpdir") + "/jocb-uploads";
+        private long maxSize = 64L * 1024 * 1024;
+        private int chunkSize = 8 * 1024 * 1024;
+        private Duration idleTimeout = Duration.ofMinutes(10);
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(final String directory) {
+            this.directory = directory;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(final long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(final int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(final Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+    }
+
+    public static class Rooms {
+        private int maxRooms = 64;
+        private Duration idleTimeout = Duration.ofHours(1);
+
+        public int getMaxRooms() {
+            return maxRooms;
+        }
+
+        public void setMaxRooms(final int maxRooms) {
+            this.maxRooms = maxRooms;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(final Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+    }
+
+    public static class Variants {
+        private long maxBytes = 32L * 1024 * 1024;
+        private int widthStep = 64;
+        private int maxEdge = 4096;
+        private int concurrency = 2;
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(final long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public int getWidthStep() {
+            return widthStep;
+        }
+
+        public void setWidthStep(final int widthStep) {
+            this.widthStep = widthStep;
+        }
+
+        public int getMaxEdge() {
+            return maxEdge;
+        }
+
+        public void setMaxEdge(final int maxEdge) {
+            this.maxEdge = maxEdge;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(final int concurrency) {
+            this.concurrency = concurrency;
+        }
+    }
+
+    public static class Admission {
+        private Boolean enabled = Boolean.TRUE;
+        private RateLimit upload = new RateLimit(30, 10);
+        private RateLimit text = new RateLimit(120, 30);
+        private RateLimit ocr = new RateLimit(10, 5);
+        private long maxInflightBytes = 64L * 1024 * 1024;
+        private int maxClients = 10_000;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(final Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public RateLimit getUpload() {
+            return upload;
+        }
+
+        public void setUpload(final RateLimit upload) {
+            this.upload = upload;
+        }
+
+        public RateLimit getText() {
+            return text;
+        }
+
+        public void setText(final RateLimit text) {
+            this.text = text;
+        }
+
+        public RateLimit getOcr() {
+            return ocr;
+        }
+
+        public void setOcr(final RateLimit ocr) {
+            this.ocr = ocr;
+        }
+
+        public long getMaxInflightBytes() {
+            return maxInflightBytes;
+        }
+
+        public void setMaxInflightBytes(final long maxInflightBytes) {
+            this.maxInflightBytes = maxInflightBytes;
+        }
+
+        public int getMaxClients() {
+            return maxClients;
+        }
+
+        public void setMaxClients(final int maxClients) {
+            this.maxClients = maxClients;
+        }
+    }
+
+    public static class RateLimit {
+        private int perMinute;
+        private int burst;
+
+        public RateLimit() {
+            this(60, 10);
+        }
+
+        RateLimit(final int perMinute, final int burst) {
+            this.perMinute = perMinute;
+            this.burst = burst;
+        }
+
+        public int getPerMinute() {
+            return perMinute;
+        }
+
+        public void setPerMinute(final int perMinute) {
+            this.perMinute = perMinute;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(final int burst) {
+            this.burst = burst;
+        }
+    }
+
+    public static class Events {
+        private int bufferSize = 1024;
+        private Duration window = Duration.ofSeconds(1);
+        private int maxBatch = 512;
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(final int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
 
-    public static class ImageTimeout extends TimeoutBase {}
+        public void setWindow(final Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxBatch() {
+            return maxBatch;
+        }
+
+        public void setMaxBatch(final int maxBatch) {
+            this.maxBatch = maxBatch;
+        }
+    }
+
+    public static class Ocr {
+        private int concurrency = 2;
+        private int queueSize = 32;
+        private int maxRetries = 2;
+        private Duration retryBackoff = Duration.ofSeconds(1);
+        private Boolean streaming = Boolean.TRUE;
+        private int maxEdge = 2048;
+        private Boolean grayscale = Boolean.FALSE;
+        private Boolean normalizeContrast = Boolean.FALSE;
+        private String format = "jpeg";
+        private int imagesPerRequest = 4;
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(final int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(final int queueSize) {
+            this.queueSize = queueSize;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(final int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public Duration getRetryBackoff() {
+            return retryBackoff;
+        }
+
+        public void setRetryBackoff(final Duration retryBackoff) {
+            this.retryBackoff = retryBackoff;
+        }
+
+        public Boolean getStreaming() {
+            return streaming;
+        }
+
+        public void setStreaming(final Boolean streaming) {
+            this.streaming = streaming;
+        }
+
+        public int getMaxEdge() {
+            return maxEdge;
+        }
+
+        public void setMaxEdge(final int maxEdge) {
+            this.maxEdge = maxEdge;
+        }
+
+        public Boolean getGrayscale() {
+            return grayscale;
+        }
+
+        public void setGrayscale(final Boolean grayscale) {
+            this.grayscale = grayscale;
+        }
+
+        public Boolean getNormalizeContrast() {
+            return normalizeContrast;
+        }
+
+        public void setNormalizeContrast(final Boolean normalizeContrast) {
+            this.normalizeContrast = normalizeContrast;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public void setFormat(final String format) {
+            this.format = format;
+        }
+
+        public int getImagesPerRequest() {
+            return imagesPerRequest;
+        }
+
+        public void setImagesPerRequest(final int imagesPerRequest) {
+            this.imagesPerRequest = imagesPerRequest;
+        }
+    }
+
+    public static class Cluster {
+        private Boolean enabled = Boolean.FALSE;
+        private TransportType transport = TransportType.TCP;
+        private String advertisedUrl = "http://localhost:8080";
+        private String bindAddress = "127.0.0.1";
+        private int port = 7480;
+        // host:port=advertised-url
+        private List<String> peers = new ArrayList<>();
+        private String secret = "";
+        private int queueSize = 4096;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(final Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public TransportType getTransport() {
+            return transport;
+        }
+
+        public void setTransport(final TransportType transport) {
+            this.transport = transport;
+        }
+
+        public String getAdvertisedUrl() {
+            return advertisedUrl;
+        }
+
+        public void setAdvertisedUrl(final String advertisedUrl) {
+            this.advertisedUrl = advertisedUrl;
+        }
+
+        public String getBindAddress() {
+            return bindAddress;
+        }
+
+        public void setBindAddress(final String bindAddress) {
+            this.bindAddress = bindAddress;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(final int port) {
+            this.port = port;
+        }
+
+        public List<String> getPeers() {
+            return peers;
+        }
+
+        public void setPeers(final List<String> peers) {
+            this.peers = peers;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(final String secret) {
+            this.secret = secret;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(final int queueSize) {
+            this.queueSize = queueSize;
+        }
+    }
+
+    public enum TransportType {
+        LOCAL,
+        TCP
+    }
+
+    public enum StorageType {
+        HEAP,
+        DIRECT,
+        MAPPED
+    }
 }
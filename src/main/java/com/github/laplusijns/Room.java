@@ -0,0 +1,25 @@
+package com.github.laplusijns;
+
+import java.util.regex.Pattern;
+import org.jspecify.annotations.Nullable;
+
+/** Room names partition the caches; requests without one use {@link #DEFAULT}. */
+public final class Room {
+
+    public static final String DEFAULT = "default";
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private Room() {}
+
+    /** {@link #DEFAULT} for a blank name; throws {@link IllegalArgumentException} for anything not URL-safe. */
+    public static String of(@Nullable final String name) {
+        if (name == null || name.isBlank()) {
+            return DEFAULT;
+        }
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("invalid room: " + name);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.laplusijns;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.jspecify.annotations.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Per-room partitions of a cache, created by the first write to a room; reads and subscriptions never create one.
+ * At most {@code jocb.rooms.max-rooms} exist at once; a partition that is empty, has no subscriber and was not
+ * used for {@code jocb.rooms.idle-timeout} is dropped and recreated on the next write.
+ */
+final class RoomMap<P extends RoomMap.Partition> {
+
+    abstract static class Partition {
+        private volatile long lastAccess = System.nanoTime();
+
+        /** No entries left and nobody listening. */
+        abstract boolean idle();
+
+        /** Called once as the partition is dropped, so running totals can keep its counts. */
+        void reclaimed() {}
+    }
+
+    private final Map<String, P> partitions = new ConcurrentHashMap<>();
+    private final Sinks.Many<Map.Entry<String, P>> created =
+            Sinks.many().multicast().directBestEffort();
+    private final Function<String, P> factory;
+    private final int maxRooms;
+    private final long idleNanos;
+
+    RoomMap(final JocbProperties.Rooms properties, final Function<String, P> factory) {
+        this.factory = factory;
+        this.maxRooms = properties.getMaxRooms();
+        this.idleNanos = properties.getIdleTimeout().toNanos();
+        Schedulers.parallel().schedulePeriodically(this::reclaim, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Runs {@code action} on the room's partition, creating it if needed. The partition cannot be reclaimed while
+     * {@code action} runs, so use this for anything that adds entries.
+     */
+    <T> T with(final String room, final Function<P, T> action) {
+        final Object[] result = {null};
+        partitions.compute(room, (name, existing) -> {
+            final P partition = existing == null ? create(name) : existing;
+            partition.lastAccess = System.nanoTime();
+            result[0] = action.apply(partition);
+            return partition;
+        });
+        @SuppressWarnings("unchecked")
+        final T value = (T) result[0];
+        return value;
+    }
+
+    /** The room's partition if it exists; reads never create one. */
+    @Nullable
+    P find(final String room) {
+        return partitions.get(room);
+    }
+
+    /**
+     * The room's partition as soon as it exists, without creating it. A partition created later is handed over
+     * before anything is added to it, so a subscriber attached at that point misses no event.
+     */
+    Mono<P> await(final String room) {
+        // 先訂閱建立通知再查詢，中間建立的房間不會漏掉
+        return Flux.merge(
+                        created.asFlux()
+                                .filter(entry -> entry.getKey().equals(room))
+                                .map(Map.Entry::getValue),
+                        Mono.fromSupplier(() -> touch(room)))
+                .next();
+    }
+
+    @Nullable
+    private P touch(final String room) {
+        return partitions.computeIfPresent(room, (_, p) -> {
+            p.lastAccess = System.nanoTime();
+            return p;
+        });
+    }
+
+    /**
+     * Runs {@code read} while no partition is being reclaimed, so a total over {@link #all()} plus what {@link
+     * Partition#reclaimed()} folded away counts every partition exactly once.
+     */
+    synchronized <T> T stable(final Supplier<T> read) {
+        return read.get();
+    }
+
+    Collection<P> all() {
+        return partitions.values();
+    }
+
+    int size() {
+        return partitions.size();
+    }
+
+    private P create(final String room) {
+        if (partitions.size() >= maxRooms) {
+            throw new IllegalStateException("too many rooms");
+        }
+        final P partition = factory.apply(room);
+        synchronized (created) {
+            created.tryEmitNext(Map.entry(room, partition));
+        }
+        return partition;
+    }
+
+    private void reclaim() {
+        final long now = System.nanoTime();
+        for (final String room : partitions.keySet()) {
+            synchronized (this) {
+                partitions.computeIfPresent(room, (_, p) -> {
+                    if (now - p.lastAccess > idleNanos && p.idle()) {
+                        p.reclaimed();
+                        return null;
+                    }
+                    return p;
+                });
+            }
+        }
+    }
+}
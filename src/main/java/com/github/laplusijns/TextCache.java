@@ -2,60 +2,205 @@ package com.github.laplusijns;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import java.time.Duration;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Objects;
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
-import reactor.util.concurrent.Queues;
 
+/** Texts per room, partitioned like {@link ImageCache}; every room has its own quota, index and event stream. */
 @Service
 public class TextCache {
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Sinks.Many<TextCacheEvent> sink =
-            Sinks.many().multicast().onBackpressureBuffer(Queues.SMALL_BUFFER_SIZE, false);
-
-    private final Cache<String, TextObject> fileCache;
+    private final RoomMap<Partition> rooms;
+    private final JocbProperties.TextTimeout textTimeout;
+    private final JocbProperties.Events eventProperties;
+    private volatile CacheJournal journal = CacheJournal.NONE;
+    // 已回收房間的累計值，讓 counter 不因回收而減少；只在 RoomMap 的鎖內存取
+    private CacheStats reclaimedStats = CacheStats.empty();
+    private long reclaimedDropped;
 
     public TextCache(final JocbProperties jocbProperties) {
-        this.fileCache = Caffeine.newBuilder()
-                .expireAfterWrite(
-                        jocbProperties.getTextTimeout().getValue(),
-                        jocbProperties.getTextTimeout().getUnit())
-                .maximumSize(jocbProperties.getTextTimeout().getMaxSize())
-                .removalListener((key, value, cause) -> {
-                    if (value != null && cause.wasEvicted()) {
-                        executor.submit(() -> sink.tryEmitNext(TextCacheEvent.delete(key.toString())));
-                    }
-                })
-                .build();
+        this.textTimeout = jocbProperties.getTextTimeout();
+        this.eventProperties = jocbProperties.getEvents();
+        this.rooms = new RoomMap<>(jocbProperties.getRooms(), Partition::new);
+    }
+
+    final class Partition extends RoomMap.Partition {
+
+        private final String room;
+        private final CacheEventBus<TextCacheEvent> events;
+        // key 為內文 UTF-8 的 SHA-256
+        private final Cache<String, TextEntry> fileCache;
+        // 只在 cache 對同一 key 的原子操作內更新
+        private final TextIndex index = new TextIndex();
+
+        private Partition(final String room) {
+            this.room = room;
+            this.events = new CacheEventBus<>(
+                    eventProperties,
+                    new EventCompactor<>(TextCacheEvent::id, TextCacheEvent::type, (_, latest) -> latest));
+            this.fileCache = Caffeine.newBuilder()
+                    .expireAfter(new ExpiredAt<String, TextEntry>(TextEntry::expired))
+                    .scheduler(Scheduler.systemScheduler())
+                    .maximumSize(textTimeout.getMaxSize())
+                    .recordStats()
+                    // 與 ImageCache 相同，在移除該 key 的原子操作內同步執行
+                    .evictionListener((key, value, cause) -> {
+                        if (value != null) {
+                            index.remove(key);
+                            events.publish(v -> TextCacheEvent.delete(key, v));
+                            if (cause == RemovalCause.SIZE) {
+                                journal.textEvict(room, key);
+                            }
+                        }
+                    })
+                    .build();
+        }
+
+        @Override
+        boolean idle() {
+            fileCache.cleanUp();
+            return fileCache.estimatedSize() == 0 && events.subscribers() == 0;
+        }
+
+        @Override
+        void reclaimed() {
+            reclaimedStats = reclaimedStats.plus(fileCache.stats());
+            reclaimedDropped += events.dropped();
+        }
+    }
+
+    /** Hit, miss and eviction counts summed over all rooms. */
+    CacheStats stats() {
+        return rooms.stable(() ->
+                rooms.all().stream().map(p -> p.fileCache.stats()).reduce(reclaimedStats, CacheStats::plus));
+    }
+
+    public long estimatedSize() {
+        return rooms.all().stream().mapToLong(p -> p.fileCache.estimatedSize()).sum();
+    }
+
+    /** Adds {@code journal} after the ones already registered; hooks run inside the atomic operation on the key. */
+    public synchronized void journal(final CacheJournal journal) {
+        this.journal = CacheJournal.of(this.journal, journal);
+    }
+
+    /**
+     * Stores {@code text} in {@code room}; putting the same text again only refreshes its expiry. Throws
+     * {@link IllegalStateException} when no room can be created.
+     */
+    public TextSummary put(final String room, final String text, final long expired) {
+        final TextEntry entry = TextEntry.of(text, expired, textTimeout.getCompressThreshold());
+        rooms.with(room, p -> p.fileCache.asMap().compute(entry.id(), (_, existing) -> {
+            if (existing == null) {
+                p.index.add(entry.id(), text);
+            }
+            p.events.publish(v -> TextCacheEvent.add(entry.summary(), v));
+            journal.textPut(new TextObject(entry.id(), expired, text, room));
+            return entry;
+        }));
+        return entry.summary();
+    }
+
+    public void restore(final TextObject textObject) {
+        rooms.with(textObject.room(), p -> p.fileCache.asMap().compute(textObject.id(), (_, existing) -> {
+            if (existing != null) {
+                return existing;
+            }
+            final TextEntry entry =
+                    TextEntry.of(textObject.text(), textObject.expired(), textTimeout.getCompressThreshold());
+            p.index.add(entry.id(), textObject.text());
+            p.events.publish(v -> TextCacheEvent.add(entry.summary(), v));
+            return entry;
+        }));
+    }
+
+    public void delete(final String room, final String id) {
+        final Partition partition = rooms.find(room);
+        if (partition == null) {
+            return;
+        }
+        partition.fileCache.asMap().compute(id, (_, _) -> {
+            partition.index.remove(id);
+            partition.events.publish(v -> TextCacheEvent.delete(id, v));
+            journal.textDelete(room, id);
+            return null;
+        });
+    }
+
+    @Nullable
+    public TextObject text(final String room, final String id) {
+        final Partition partition = rooms.find(room);
+        final TextEntry entry = partition == null ? null : partition.fileCache.getIfPresent(id);
+        return entry == null ? null : entry.textObject(room);
+    }
+
+    /** Every text in every room. */
+    public List<@NonNull TextObject> all() {
+        return rooms.all().stream()
+                .flatMap(p -> p.fileCache.asMap().values().stream().map(entry -> entry.textObject(p.room)))
+                .toList();
+    }
+
+    public Collection<@NonNull TextSummary> keys(final String room) {
+        final Partition partition = rooms.find(room);
+        return partition == null
+                ? List.of()
+                : partition.fileCache.asMap().values().stream()
+                        .map(TextEntry::summary)
+                        .toList();
+    }
+
+    /** Live texts of {@code room} matching {@code query}, best match first. */
+    public List<@NonNull TextSummary> search(final String room, final String query) {
+        final Partition partition = rooms.find(room);
+        if (partition == null) {
+            return List.of();
+        }
+        return partition.index.search(query).stream()
+                .map(partition.fileCache::getIfPresent)
+                .filter(Objects::nonNull)
+                .map(TextEntry::summary)
+                .toList();
     }
 
-    public void put(final TextObject textObject) {
-        fileCache.put(textObject.text(), textObject);
-        executor.submit(() -> sink.tryEmitNext(TextCacheEvent.add(textObject)));
+    public long version(final String room) {
+        final Partition partition = rooms.find(room);
+        return partition == null ? 0 : partition.events.version();
     }
 
-    public void delete(final String text) {
-        fileCache.invalidate(text);
-        executor.submit(() -> sink.tryEmitNext(TextCacheEvent.delete(text)));
+    public long droppedEvents() {
+        return rooms.stable(() -> reclaimedDropped
+                + rooms.all().stream().mapToLong(p -> p.events.dropped()).sum());
     }
 
-    public Collection<@NonNull TextObject> keys() {
-        return fileCache.asMap().values();
+    public int subscribers() {
+        return rooms.all().stream().mapToInt(p -> p.events.subscribers()).sum();
     }
 
-    public Flux<List<TextCacheEvent>> sub() {
-        return sink.asFlux().buffer(Duration.ofSeconds(1l));
+    public Flux<List<TextCacheEvent>> sub(final String room) {
+        // 房間尚未存在時等到第一次寫入建立它，再接上它的事件
+        return rooms.await(room).flatMapMany(p -> p.events.flux());
     }
 
-    public void deleteAllTexts() {
-        fileCache.invalidateAll();
-        executor.submit(() -> sink.tryEmitNext(TextCacheEvent.deleteAll()));
+    public void deleteAllTexts(final String room) {
+        final Partition partition = rooms.find(room);
+        if (partition != null) {
+            // 逐筆移除，讓索引與 cache 在同一個原子操作內更新
+            for (final String id : List.copyOf(partition.fileCache.asMap().keySet())) {
+                partition.fileCache.asMap().computeIfPresent(id, (_, _) -> {
+                    partition.index.remove(id);
+                    return null;
+                });
+            }
+            partition.events.publish(TextCacheEvent::deleteAll);
+        }
+        journal.textClear(room);
     }
 }
@@ -2,17 +2,19 @@ package com.github.laplusijns;
 
 import org.jspecify.annotations.NonNull;
 
+/** Texts are referenced by id; {@code ADD} carries the {@link TextSummary} fields, never the full body. */
 public record TextCacheEvent(
-        Long expired, EventType type, @NonNull String text) {
-    public static TextCacheEvent add(final TextObject textObject) {
-        return new TextCacheEvent(textObject.expired(), EventType.ADD, textObject.text());
+        Long expired, EventType type, @NonNull String id, String preview, Integer length, Long version) {
+    public static TextCacheEvent add(final TextSummary summary, final long version) {
+        return new TextCacheEvent(
+                summary.expired(), EventType.ADD, summary.id(), summary.preview(), summary.length(), version);
     }
 
-    public static TextCacheEvent delete(final String text) {
-        return new TextCacheEvent(null, EventType.DELETE, text);
+    public static TextCacheEvent delete(final String id, final long version) {
+        return new TextCacheEvent(null, EventType.DELETE, id, null, null, version);
     }
 
-    public static TextCacheEvent deleteAll() {
-        return new TextCacheEvent(null, EventType.DELETE_ALL, "");
+    public static TextCacheEvent deleteAll(final long version) {
+        return new TextCacheEvent(null, EventType.DELETE_ALL, "", null, null, version);
     }
 }
@@ -0,0 +1,83 @@
+package com.github.laplusijns;
+
+import com.github.laplusijns.blob.Digests;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cached form of a text: keyed by the SHA-256 of its UTF-8 bytes, with bodies above the threshold kept deflated
+ * and only inflated when the full text is read.
+ */
+record TextEntry(String id, long expired, TextSummary summary, int size, byte[] body, boolean compressed) {
+
+    static final int PREVIEW_LENGTH = 200;
+
+    static TextEntry of(final String text, final long expired, final int compressThreshold) {
+        final byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        final String id = Digests.sha256(utf8);
+        final TextSummary summary = new TextSummary(id, expired, preview(text), text.length());
+        if (utf8.length > compressThreshold) {
+            final byte[] deflated = deflate(utf8);
+            // 壓縮後沒有變小就保留原文
+            if (deflated.length < utf8.length) {
+                return new TextEntry(id, expired, summary, utf8.length, deflated, true);
+            }
+        }
+        return new TextEntry(id, expired, summary, utf8.length, utf8, false);
+    }
+
+    String text() {
+        return new String(compressed ? inflate(body, size) : body, StandardCharsets.UTF_8);
+    }
+
+    TextObject textObject(final String room) {
+        return new TextObject(id, expired, text(), room);
+    }
+
+    private static String preview(final String text) {
+        if (text.codePointCount(0, text.length()) <= PREVIEW_LENGTH) {
+            return text;
+        }
+        return text.substring(0, text.offsetByCodePoints(0, PREVIEW_LENGTH));
+    }
+
+    private static byte[] deflate(final byte[] bytes) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(final byte[] bytes, final int size) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            final byte[] out = new byte[size];
+            int offset = 0;
+            while (offset < size && !inflater.finished()) {
+                final int n = inflater.inflate(out, offset, size - offset);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("truncated text body");
+                }
+                offset += n;
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
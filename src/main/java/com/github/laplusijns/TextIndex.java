@@ -0,0 +1,151 @@
+package com.github.laplusijns;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Inverted index over the cached texts, keyed by text id.
+ *
+ * <p>Text is lower-cased and split into runs of letters and digits. Han, kana and Hangul runs have no word
+ * boundaries, so they are indexed as single characters plus overlapping bigrams; other runs are indexed as
+ * words and matched by prefix, which keeps search-as-you-type working. A query matches a text only if every
+ * query term does, and matches are scored by tf-idf.
+ */
+final class TextIndex {
+
+    // term -> (id -> 出現次數)
+    private final ConcurrentSkipListMap<String, Map<String, Integer>> postings = new ConcurrentSkipListMap<>();
+    private final Map<String, Set<String>> terms = new ConcurrentHashMap<>();
+
+    /** Called inside the cache's atomic operation for {@code id}, so updates to one id never interleave. */
+    void add(final String id, final String text) {
+        if (terms.containsKey(id)) {
+            return;
+        }
+        final Map<String, Integer> frequencies = new HashMap<>();
+        for (final String term : terms(text, false)) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        terms.put(id, frequencies.keySet());
+        frequencies.forEach((term, count) -> postings.compute(term, (_, ids) -> {
+            final Map<String, Integer> target = ids == null ? new ConcurrentHashMap<>() : ids;
+            target.put(id, count);
+            return target;
+        }));
+    }
+
+    void remove(final String id) {
+        final Set<String> removed = terms.remove(id);
+        if (removed == null) {
+            return;
+        }
+        for (final String term : removed) {
+            postings.computeIfPresent(term, (_, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /** Ids matching every term of {@code query}, best first; empty when the query has no indexable term. */
+    List<String> search(final String query) {
+        final Set<String> queryTerms = new LinkedHashSet<>(terms(query, true));
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+        final int documents = Math.max(1, terms.size());
+        Map<String, Double> scores = null;
+        for (final String term : queryTerms) {
+            final Map<String, Integer> matches = matches(term);
+            final double idf = Math.log(1.0 + (double) documents / Math.max(1, matches.size()));
+            final Map<String, Double> previous = scores;
+            final Map<String, Double> next = new HashMap<>();
+            matches.forEach((id, count) -> {
+                if (previous == null || previous.containsKey(id)) {
+                    next.put(id, (previous == null ? 0.0 : previous.get(id)) + count * idf);
+                }
+            });
+            scores = next;
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+        final List<Map.Entry<String, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<String, Double>comparingByValue()
+                .reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        return ranked.stream().map(Map.Entry::getKey).toList();
+    }
+
+    private Map<String, Integer> matches(final String term) {
+        if (isCjk(term.codePointAt(0))) {
+            return postings.getOrDefault(term, Map.of());
+        }
+        // 英數字詞以前綴比對
+        final NavigableMap<String, Map<String, Integer>> prefixed =
+                postings.subMap(term, true, term + Character.MAX_VALUE, false);
+        if (prefixed.size() == 1) {
+            return prefixed.firstEntry().getValue();
+        }
+        final Map<String, Integer> merged = new HashMap<>();
+        prefixed.values().forEach(ids -> ids.forEach((id, count) -> merged.merge(id, count, Integer::sum)));
+        return merged;
+    }
+
+    /**
+     * Splits {@code text} into index terms. For a query, CJK runs longer than one character only yield their
+     * bigrams, since the single characters add nothing once every bigram has to match.
+     */
+    static List<String> terms(final String text, final boolean query) {
+        final String lower = text.toLowerCase(Locale.ROOT);
+        final List<String> result = new ArrayList<>();
+        final StringBuilder word = new StringBuilder();
+        final List<String> run = new ArrayList<>();
+        int i = 0;
+        while (i <= lower.length()) {
+            final int cp = i < lower.length() ? lower.codePointAt(i) : -1;
+            final boolean cjk = cp >= 0 && isCjk(cp);
+            if (cp < 0 || cjk || !Character.isLetterOrDigit(cp)) {
+                if (!word.isEmpty()) {
+                    result.add(word.toString());
+                    word.setLength(0);
+                }
+            } else {
+                word.appendCodePoint(cp);
+            }
+            if (cjk) {
+                run.add(Character.toString(cp));
+            } else if (!run.isEmpty()) {
+                cjkTerms(run, query, result);
+                run.clear();
+            }
+            i += cp < 0 ? 1 : Character.charCount(cp);
+        }
+        return result;
+    }
+
+    private static void cjkTerms(final List<String> run, final boolean query, final List<String> result) {
+        if (!query || run.size() == 1) {
+            result.addAll(run);
+        }
+        for (int i = 0; i + 1 < run.size(); i++) {
+            result.add(run.get(i) + run.get(i + 1));
+        }
+    }
+
+    private static boolean isCjk(final int cp) {
+        final Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -2,4 +2,5 @@ package com.github.laplusijns;
 
 import org.jspecify.annotations.NonNull;
 
-public record TextObject(Long expired, @NonNull String text) {}
+/** Full text of one clipboard entry; lists and events carry a {@link TextSummary} instead. */
+public record TextObject(@NonNull String id, Long expired, @NonNull String text, @NonNull String room) {}
@@ -0,0 +1,7 @@
+package com.github.laplusijns;
+
+import java.util.List;
+import org.jspecify.annotations.NonNull;
+
+/** One page of search results, best match first; {@code total} counts every match. */
+public record TextSearchPage(@NonNull List<@NonNull TextSummary> texts, int total) {}
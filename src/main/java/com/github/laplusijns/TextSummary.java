@@ -0,0 +1,6 @@
+package com.github.laplusijns;
+
+import org.jspecify.annotations.NonNull;
+
+/** {@code preview} is the start of the text; when it is shorter than {@code length}, fetch the rest by id. */
+public record TextSummary(@NonNull String id, Long expired, @NonNull String preview, int length) {}
@@ -0,0 +1,136 @@
+package com.github.laplusijns;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Renders thumbnails off the request thread. At most {@code jocb.thumbnail-concurrency} images are decoded at
+ * once; results reach subscribers as an {@link EventType#UPDATE} event.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Semaphore permits;
+    private final int queueSize;
+    private final Timer decodeTimer;
+    private final Timer thumbnailTimer;
+    ImageCache imageCache;
+    Boolean enableThumbnail;
+    Integer sizeThumbnail;
+
+    public ThumbnailService(
+            final ImageCache imageCache, final JocbProperties jocbProperties, final MeterRegistry meterRegistry) {
+        this.imageCache = imageCache;
+        this.enableThumbnail = jocbProperties.getEnableThumbnail();
+        this.sizeThumbnail = jocbProperties.getSizeThumbnail();
+        this.permits = new Semaphore(jocbProperties.getThumbnailConcurrency());
+        this.queueSize = jocbProperties.getThumbnailQueueSize();
+        this.decodeTimer = JocbMetrics.uploadStage(meterRegistry, "decode");
+        this.thumbnailTimer = JocbMetrics.uploadStage(meterRegistry, "thumbnail");
+    }
+
+    /** Thumbnails queued or rendering. */
+    public int pending() {
+        return pending.get();
+    }
+
+    public boolean enabled() {
+        return Boolean.TRUE.equals(enableThumbnail);
+    }
+
+    public void submit(final FileObject fileObject) {
+        final Optional<FileObject.Thumbnail> shared =
+                imageCache.sharedThumbnail(fileObject.blob().digest());
+        if (shared.isPresent()) {
+            imageCache.update(fileObject.uuid(), fileObject.width(), fileObject.height(), shared.get());
+            return;
+        }
+        if (pending.incrementAndGet() > queueSize) {
+            pending.decrementAndGet();
+            log.warn("thumbnail queue full, skip {}", fileObject.uuid());
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+                try {
+                    process(fileObject);
+                } finally {
+                    permits.release();
+                }
+            } catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("thumbnail failed for {}", fileObject.uuid(), e);
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    private void process(final FileObject fileObject) throws IOException {
+        final long start = System.nanoTime();
+        final BufferedImage image;
+        try (InputStream in = fileObject.blob().openStream()) {
+            image = ImageProbe.decode(in, sizeThumbnail);
+        }
+        final long decoded = System.nanoTime();
+        decodeTimer.record(decoded - start, TimeUnit.NANOSECONDS);
+        if (image == null) {
+            return;
+        }
+        final FileObject.Thumbnail thumbnail = createThumbnail(image);
+        thumbnailTimer.record(System.nanoTime() - decoded, TimeUnit.NANOSECONDS);
+        imageCache.update(fileObject.uuid(), fileObject.width(), fileObject.height(), thumbnail);
+    }
+
+    FileObject.Thumbnail createThumbnail(final BufferedImage original) throws IOException {
+        final int MAX_SIZE = this.sizeThumbnail;
+
+        final int originalWidth = original.getWidth();
+        final int originalHeight = original.getHeight();
+
+        final float scale = Math.min((float) MAX_SIZE / originalWidth, (float) MAX_SIZE / originalHeight);
+
+        final int thumbWidth = Math.round(originalWidth * scale);
+        final int thumbHeight = Math.round(originalHeight * scale);
+
+        final BufferedImage thumbnailImage = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_RGB);
+
+        final Graphics2D g2d = thumbnailImage.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(original, 0, 0, thumbWidth, thumbHeight, null);
+        g2d.dispose();
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(thumbnailImage, "jpg", baos);
+
+        return new FileObject.Thumbnail(thumbWidth, thumbHeight, imageCache.store(baos.toByteArray()));
+    }
+
+    @PreDestroy
+    void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.laplusijns;
+
+import java.util.concurrent.TimeUnit;
+
+/** Holds up to {@code burst} tokens and refills {@code perMinute} of them a minute; each request takes one. */
+final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    // 以下欄位在 synchronized 內存取
+    private double tokens;
+    private long updated = System.nanoTime();
+
+    TokenBucket(final JocbProperties.RateLimit limit) {
+        this.capacity = Math.max(1, limit.getBurst());
+        this.tokensPerNano = Math.max(1, limit.getPerMinute()) / (double) TimeUnit.MINUTES.toNanos(1);
+        this.tokens = capacity;
+    }
+
+    synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /** Seconds until the next token, at least 1. */
+    synchronized long retryAfterSeconds() {
+        refill();
+        final double nanos = Math.max(0, 1 - tokens) / tokensPerNano;
+        return Math.max(1, (long) Math.ceil(nanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - updated) * tokensPerNano);
+        updated = now;
+    }
+}
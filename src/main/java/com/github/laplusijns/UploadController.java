@@ -0,0 +1,92 @@
+package com.github.laplusijns;
+
+import com.github.laplusijns.UploadService.UploadStatus;
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Chunked upload protocol: {@code POST /upload} opens an upload, each {@code PUT /upload/{id}?offset=n} streams
+ * the raw request body as the next chunk, {@code GET} reports how far the server got so an interrupted upload can
+ * resume, and {@code POST /upload/{id}/complete} stores the image. Chunks bypass multipart parsing, so
+ * {@code spring.servlet.multipart.max-file-size} does not apply; {@code jocb.upload.max-size} does.
+ */
+@RestController
+@RequestMapping("/upload")
+public class UploadController {
+
+    UploadService uploadService;
+
+    public UploadController(final UploadService uploadService) {
+        super();
+        this.uploadService = uploadService;
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadStatus> start(
+            @RequestParam(required = false) final String room,
+            @RequestParam(required = false) final String filename,
+            @RequestParam(required = false) final String contentType,
+            @RequestParam final long size,
+            @RequestParam(required = false) final Long ttl)
+            throws IOException {
+        final String name;
+        try {
+            name = Room.of(room);
+        } catch (IllegalArgumentException _) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(uploadService.start(name, filename, contentType, size, ttl));
+        } catch (IllegalArgumentException _) {
+            return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).build();
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<UploadStatus> status(@PathVariable final String id) {
+        final UploadStatus status = uploadService.status(id);
+        return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<UploadStatus> append(
+            @PathVariable final String id, @RequestParam final long offset, final InputStream body)
+            throws IOException {
+        try {
+            final UploadStatus status = uploadService.append(id, offset, body);
+            return status == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(status);
+        } catch (IllegalStateException _) {
+            // offset 不符，回傳目前進度讓用戶端從正確位置續傳
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(uploadService.status(id));
+        } catch (IllegalArgumentException _) {
+            return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).body(uploadService.status(id));
+        }
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<String> complete(@PathVariable final String id) throws IOException {
+        try {
+            final String receipt = uploadService.complete(id);
+            return receipt == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(receipt);
+        } catch (IllegalStateException _) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abort(@PathVariable final String id) {
+        uploadService.abort(id);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,300 @@
+package com.github.laplusijns;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.laplusijns.JocbProperties.ImageTimeout;
+import com.github.laplusijns.blob.Blob;
+import com.github.laplusijns.blob.Digests;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.Nullable;
+import org.springframework.stereotype.Service;
+
+/**
+ * Chunked, resumable uploads.
+ *
+ * <p>Chunks must arrive in order; each one is streamed through a fixed buffer into a spool file while the
+ * SHA-256 is updated, so memory per upload does not depend on the file size. A chunk that breaks off midway
+ * leaves {@code received} at the last complete buffer and the client resumes from there. The last chunk commits
+ * the file to the {@link ImageCache}; uploads without a new chunk for {@code jocb.upload.idle-timeout} are
+ * dropped with their spool file.
+ */
+@Service
+public class UploadService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    ImageCache imageCache;
+    ThumbnailService thumbnailService;
+    ImageTimeout imageTimeout;
+    private final Path directory;
+    private final long maxSize;
+    private final int chunkSize;
+    private final Cache<String, Upload> uploads;
+    private final Timer probeTimer;
+    private final Timer storeTimer;
+
+    public UploadService(
+            final ImageCache imageCache,
+            final ThumbnailService thumbnailService,
+            final JocbProperties jocbProperties,
+            final MeterRegistry meterRegistry) {
+        super();
+        this.imageCache = imageCache;
+        this.thumbnailService = thumbnailService;
+        this.imageTimeout = jocbProperties.getImageTimeout();
+        final JocbProperties.Upload upload = jocbProperties.getUpload();
+        this.directory = Path.of(upload.getDirectory());
+        this.chunkSize = upload.getChunkSize();
+        this.maxSize =
+                maxSize(upload, imageTimeout, jocbProperties.getBlobStorage(), jocbProperties.getAdmission());
+        this.uploads = Caffeine.newBuilder()
+                .expireAfterAccess(upload.getIdleTimeout())
+                .scheduler(Scheduler.systemScheduler())
+                .removalListener((_, value, _) -> {
+                    if (value != null) {
+                        value.discard();
+                    }
+                })
+                .build();
+        this.probeTimer = JocbMetrics.uploadStage(meterRegistry, "probe");
+        this.storeTimer = JocbMetrics.uploadStage(meterRegistry, "store");
+        try {
+            Files.createDirectories(directory);
+            // 上次執行未完成的上傳無法續傳
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*.part")) {
+                for (final Path path : stale) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Largest upload accepted. A store that keeps payloads in memory reads the whole spool file on completion, so
+     * such uploads cannot exceed the image byte budget, or without one the admission in-flight budget that the
+     * completion is reserved against. With the defaults this is 64 MiB.
+     */
+    static long maxSize(
+            final JocbProperties.Upload upload,
+            final ImageTimeout imageTimeout,
+            final JocbProperties.BlobStorage blobStorage,
+            final JocbProperties.Admission admission) {
+        // Blob 以 int 表示大小
+        long limit = Math.min(upload.getMaxSize(), Integer.MAX_VALUE);
+        if (imageTimeout.getMaxBytes() > 0) {
+            limit = Math.min(limit, imageTimeout.getMaxBytes());
+        } else if (blobStorage.getType() != JocbProperties.StorageType.MAPPED) {
+            limit = Math.min(limit, admission.getMaxInflightBytes());
+        }
+        return limit;
+    }
+
+    /** Declared size of an open upload, or 0 for an unknown one. */
+    public long size(final String id) {
+        final Upload upload = uploads.getIfPresent(id);
+        return upload == null ? 0 : upload.size;
+    }
+
+    /**
+     * Opens an upload of {@code size} bytes into {@code room}, with {@code ttl} as in {@link
+     * EndpointService#uploadFile}; throws {@link IllegalArgumentException} above the size limit.
+     */
+    public UploadStatus start(
+            final String room,
+            @Nullable final String filename,
+            @Nullable final String contentType,
+            final long size,
+            @Nullable final Long ttl)
+            throws IOException {
+        if (size < 0 || size > maxSize) {
+            throw new IllegalArgumentException("upload size %d exceeds %d".formatted(size, maxSize));
+        }
+        final String id = UUID.randomUUID().toString();
+        final Upload upload = new Upload(id, room, filename, contentType, size, ttl, directory.resolve(id + ".part"));
+        uploads.put(id, upload);
+        return upload.status();
+    }
+
+    @Nullable
+    public UploadStatus status(final String id) {
+        final Upload upload = uploads.getIfPresent(id);
+        return upload == null ? null : upload.status();
+    }
+
+    /**
+     * Appends {@code body} at {@code offset}, which must equal the bytes received so far and no other chunk may
+     * be in progress; otherwise throws {@link IllegalStateException} and nothing is written. Returns {@code null}
+     * for an unknown upload.
+     */
+    @Nullable
+    public UploadStatus append(final String id, final long offset, final InputStream body) throws IOException {
+        final Upload upload = uploads.getIfPresent(id);
+        if (upload == null) {
+            return null;
+        }
+        upload.append(offset, body);
+        return upload.status();
+    }
+
+    /**
+     * Stores a fully received upload as an image and returns the same receipt as {@link
+     * EndpointService#uploadFile}; throws {@link IllegalStateException} while bytes are missing.
+     */
+    @Nullable
+    public String complete(final String id) throws IOException {
+        final Upload upload = uploads.getIfPresent(id);
+        if (upload == null) {
+            return null;
+        }
+        // 尚未收齊時保留上傳，讓用戶端續傳
+        final String digest = upload.finish();
+        try {
+            final long start = System.nanoTime();
+            final ImageProbe.Size size;
+            try (InputStream in = Files.newInputStream(upload.file)) {
+                size = ImageProbe.probe(in);
+            }
+            probeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            final Blob blob = storeTimer.record(() -> imageCache.store(upload.file, digest));
+            final FileObject fileObject = new FileObject(
+                    imageTimeout.expiredAt(upload.ttl),
+                    upload.filename,
+                    blob,
+                    UUID.randomUUID().toString(),
+                    size == null ? null : size.width(),
+                    size == null ? null : size.height(),
+                    upload.contentType,
+                    null,
+                    upload.room);
+            imageCache.put(fileObject);
+            if (size != null && thumbnailService.enabled()) {
+                thumbnailService.submit(fileObject);
+            }
+            return "%s_%d_%s".formatted(upload.filename, upload.size, fileObject.uuid());
+        } finally {
+            uploads.invalidate(id);
+        }
+    }
+
+    public void abort(final String id) {
+        uploads.invalidate(id);
+    }
+
+    public record UploadStatus(String id, long received, long size, int chunkSize) {}
+
+    private final class Upload {
+
+        private final String id;
+        private final String room;
+        private final String filename;
+        private final String contentType;
+        private final long size;
+        private final Long ttl;
+        private final Path file;
+        // 只由持有 writing 的執行緒存取
+        private final MessageDigest digest = Digests.sha256();
+        private final FileChannel channel;
+        // 只由持有 writing 的執行緒寫入，status 不需鎖即可讀取
+        private volatile long received;
+        // 以下欄位在 synchronized 內存取
+        private boolean writing;
+        private boolean closed;
+
+        private Upload(
+                final String id,
+                final String room,
+                @Nullable final String filename,
+                @Nullable final String contentType,
+                final long size,
+                @Nullable final Long ttl,
+                final Path file)
+                throws IOException {
+            this.id = id;
+            this.room = room;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.size = size;
+            this.ttl = ttl;
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        private UploadStatus status() {
+            return new UploadStatus(id, received, size, chunkSize);
+        }
+
+        /** Reads the body outside the lock; the lock only guards claiming and releasing the write position. */
+        private void append(final long offset, final InputStream body) throws IOException {
+            claim(offset);
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = body.readNBytes(buffer, 0, buffer.length)) > 0) {
+                    if (received + n > size) {
+                        throw new IllegalArgumentException("chunk exceeds declared size " + size);
+                    }
+                    final ByteBuffer src = ByteBuffer.wrap(buffer, 0, n);
+                    // 以絕對位置寫入，中斷的 chunk 留下的尾端會被續傳覆寫
+                    long position = received;
+                    while (src.hasRemaining()) {
+                        position += channel.write(src, position);
+                    }
+                    digest.update(buffer, 0, n);
+                    received += n;
+                }
+            } finally {
+                release();
+            }
+        }
+
+        private synchronized void claim(final long offset) {
+            if (closed || writing || offset != received) {
+                throw new IllegalStateException("expected offset " + received);
+            }
+            writing = true;
+        }
+
+        private synchronized void release() {
+            writing = false;
+        }
+
+        /** Closes the spool file and returns the digest once every byte is there. */
+        private synchronized String finish() throws IOException {
+            if (closed || writing || received != size) {
+                throw new IllegalStateException("received %d of %d bytes".formatted(received, size));
+            }
+            closed = true;
+            channel.truncate(size);
+            channel.close();
+            return HexFormat.of().formatHex(digest.digest());
+        }
+
+        private synchronized void discard() {
+            // 進行中的 chunk 會因 channel 關閉而失敗
+            closed = true;
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException _) {
+                // 下次啟動時清除
+            }
+        }
+    }
+}
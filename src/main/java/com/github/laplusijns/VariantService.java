@@ -0,0 +1,279 @@
+package com.github.laplusijns;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.laplusijns.blob.Digests;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.jspecify.annotations.Nullable;
+import org.springframework.stereotype.Service;
+
+/**
+ * Transcoded and downscaled copies of cached images, rendered on first request. Widths are rounded up to {@code
+ * jocb.variants.width-step} and never exceed the original, which bounds how many variants one image can have;
+ * the longest side never exceeds {@code jocb.variants.max-edge}, which also bounds the decode. At most {@code
+ * jocb.variants.concurrency} variants render at once. Variants expire with their source image, are dropped when it
+ * is deleted, and concurrent requests for the same variant share one render. Variants are indexed by room and
+ * source image, so a delete or clear invalidates only the variants it owns.
+ */
+@Service
+public class VariantService implements CacheJournal {
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    /** Output formats; WebP needs an ImageIO writer plugin on the classpath and is served as JPEG without one. */
+    public enum Format {
+        PNG("png", "image/png"),
+        JPEG("jpeg", "image/jpeg"),
+        WEBP("webp", "image/webp");
+
+        private final String writer;
+        private final String contentType;
+
+        Format(final String writer, final String contentType) {
+            this.writer = writer;
+            this.contentType = contentType;
+        }
+
+        /** Throws {@link IllegalArgumentException} for an unknown name. */
+        public static Format of(final String name) {
+            final String upper = name.toUpperCase(Locale.ROOT);
+            return valueOf("JPG".equals(upper) ? "JPEG" : upper);
+        }
+
+        /** Format closest to the source that keeps its transparency. */
+        static Format source(@Nullable final String contentType) {
+            return "image/jpeg".equals(contentType) ? JPEG : PNG;
+        }
+
+        Format writable() {
+            return ImageIO.getImageWritersByFormatName(writer).hasNext() ? this : JPEG;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+    }
+
+    // width 0 表示原始寬度
+    record Key(String room, String uuid, Format format, int width) {}
+
+    public record Variant(byte[] bytes, Format format, String digest, long expired) {}
+
+    ImageCache imageCache;
+    private final int widthStep;
+    private final int maxEdge;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final AsyncCache<Key, Variant> variants;
+    // room → uuid → 已產生的 variant；每個 room 的修改都在 compute 內完成
+    private final Map<String, Map<String, Set<Key>>> index = new ConcurrentHashMap<>();
+
+    public VariantService(
+            final ImageCache imageCache, final JocbProperties jocbProperties, final MeterRegistry meterRegistry) {
+        super();
+        this.imageCache = imageCache;
+        final JocbProperties.Variants properties = jocbProperties.getVariants();
+        this.widthStep = Math.max(1, properties.getWidthStep());
+        this.maxEdge = Math.max(1, properties.getMaxEdge());
+        this.permits = new Semaphore(Math.max(1, properties.getConcurrency()));
+        this.variants = Caffeine.newBuilder()
+                .expireAfter(new ExpiredAt<Key, Variant>(Variant::expired))
+                .scheduler(Scheduler.systemScheduler())
+                .maximumWeight(properties.getMaxBytes())
+                .weigher((final Key _, final Variant value) -> value.bytes().length + ImageCache.ENTRY_OVERHEAD)
+                .removalListener((final Key key, final Variant _, final RemovalCause _) -> {
+                    if (key != null) {
+                        unindex(key);
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, variants, "variant");
+    }
+
+    @PostConstruct
+    void start() {
+        imageCache.journal(this);
+    }
+
+    /**
+     * Variant of the image {@code uuid} in {@code format} (the source's own by default) at most {@code width}
+     * pixels wide (the original width by default). Completes with {@code null} when the image is gone or cannot be
+     * decoded.
+     */
+    public CompletableFuture<@Nullable Variant> variant(
+            final String uuid, @Nullable final Format format, @Nullable final Integer width) {
+        final FileObject file = imageCache.file(uuid);
+        if (file == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final Format target = (format == null ? Format.source(file.contentType()) : format).writable();
+        final Key key = new Key(file.room(), uuid, target, bucket(width, file.width()));
+        // 同一個 key 的並發請求共用同一個 future；結果為 null 時不會留在 cache
+        return variants.get(key, (k, _) -> CompletableFuture.supplyAsync(() -> limited(file, k), executor)
+                .thenApply(variant -> {
+                    if (variant != null) {
+                        index(k);
+                    }
+                    return variant;
+                }));
+    }
+
+    private void index(final Key key) {
+        index.compute(key.room(), (_, uuids) -> {
+            final Map<String, Set<Key>> map = uuids == null ? new HashMap<>() : uuids;
+            map.computeIfAbsent(key.uuid(), _ -> new HashSet<>()).add(key);
+            return map;
+        });
+    }
+
+    private void unindex(final Key key) {
+        index.computeIfPresent(key.room(), (_, uuids) -> {
+            final Set<Key> keys = uuids.get(key.uuid());
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                uuids.remove(key.uuid());
+            }
+            return uuids.isEmpty() ? null : uuids;
+        });
+    }
+
+    @Nullable
+    private Variant limited(final FileObject file, final Key key) {
+        // 等待中的只是虛擬執行緒，解碼後的影像同時最多 concurrency 張
+        permits.acquireUninterruptibly();
+        try {
+            return render(file, key);
+        } finally {
+            permits.release();
+        }
+    }
+
+    int bucket(@Nullable final Integer width, @Nullable final Integer original) {
+        if (width == null) {
+            return 0;
+        }
+        final int rounded = (int) Math.min(Integer.MAX_VALUE, (width + (long) widthStep - 1) / widthStep * widthStep);
+        // 不放大
+        return original != null && rounded >= original ? 0 : rounded;
+    }
+
+    @Nullable
+    private Variant render(final FileObject file, final Key key) {
+        try {
+            final BufferedImage decoded;
+            try (InputStream in = file.blob().openStream()) {
+                decoded = ImageProbe.decode(in, maxEdge(file, key.width()));
+            }
+            if (decoded == null) {
+                return null;
+            }
+            final byte[] bytes = encode(scale(decoded, key), key.format());
+            return new Variant(bytes, key.format(), Digests.sha256(bytes), file.expired());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Longest edge to decode so that the width still reaches {@code width} after subsampling, never more than
+     * {@code jocb.variants.max-edge}.
+     */
+    private int maxEdge(final FileObject file, final int width) {
+        if (width == 0 || file.width() == null || file.height() == null) {
+            return maxEdge;
+        }
+        final double aspect = Math.max(1.0, (double) file.height() / file.width());
+        return (int) Math.min(maxEdge, Math.ceil(width * aspect));
+    }
+
+    private BufferedImage scale(final BufferedImage source, final Key key) {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        // 解碼時的 subsampling 只取整數倍，輸出仍需限制在 max-edge 內
+        final double fit = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        final int fitWidth = Math.max(1, (int) Math.floor(width * fit));
+        final int targetWidth = key.width() == 0 ? fitWidth : Math.min(fitWidth, key.width());
+        final int targetHeight = Math.max(1, (int) Math.round((double) height * targetWidth / width));
+        final boolean alpha = key.format() != Format.JPEG;
+        final BufferedImage target = new BufferedImage(
+                targetWidth, targetHeight, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2d = target.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        // JPEG 沒有 alpha，透明處以白色填滿
+        g2d.drawImage(source, 0, 0, targetWidth, targetHeight, alpha ? null : Color.WHITE, null);
+        g2d.dispose();
+        return target;
+    }
+
+    private static byte[] encode(final BufferedImage image, final Format format) throws IOException {
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format.writer);
+        final ImageWriter writer = writers.next();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(baos)) {
+            writer.setOutput(out);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && format != Format.PNG) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+
+    @Override
+    public void imageDelete(final String room, final String uuid) {
+        final List<Key> keys = new ArrayList<>();
+        index.computeIfPresent(room, (_, uuids) -> {
+            final Set<Key> removed = uuids.remove(uuid);
+            if (removed != null) {
+                keys.addAll(removed);
+            }
+            return uuids.isEmpty() ? null : uuids;
+        });
+        variants.synchronous().invalidateAll(keys);
+    }
+
+    @Override
+    public void imageClear(final String room) {
+        final Map<String, Set<Key>> uuids = index.remove(room);
+        if (uuids != null) {
+            uuids.values().forEach(variants.synchronous()::invalidateAll);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.laplusijns.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Payload handle kept inside the cache entries, the bytes themselves live in a {@link BlobStore}.
+ *
+ * <p>Reading a blob after it was released throws {@link IllegalStateException}.
+ */
+public interface Blob {
+
+    int size();
+
+    /** Hex encoded SHA-256 of the payload. */
+    String digest();
+
+    byte[] bytes();
+
+    InputStream openStream() throws IOException;
+
+    /** {@code false} for payloads another cluster node holds and that are fetched on first read. */
+    default boolean local() {
+        return true;
+    }
+}
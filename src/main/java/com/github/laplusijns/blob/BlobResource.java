@@ -0,0 +1,45 @@
+package com.github.laplusijns.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.core.io.AbstractResource;
+
+/**
+ * Exposes a {@link Blob} to Spring MVC so responses are streamed from the store and {@code Range} requests are
+ * served as regions without copying the payload into a {@code byte[]} first.
+ */
+public class BlobResource extends AbstractResource {
+
+    private final Blob blob;
+    private final String filename;
+
+    public BlobResource(final Blob blob, final String filename) {
+        this.blob = blob;
+        this.filename = filename;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return blob.openStream();
+    }
+
+    @Override
+    public long contentLength() {
+        return blob.size();
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Blob [" + blob.digest() + "]";
+    }
+}
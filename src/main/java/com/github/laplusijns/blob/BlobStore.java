@@ -0,0 +1,36 @@
+package com.github.laplusijns.blob;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public interface BlobStore {
+
+    default Blob write(final byte[] bytes) {
+        return write(bytes, Digests.sha256(bytes));
+    }
+
+    Blob write(byte[] bytes, String digest);
+
+    /**
+     * Stores the contents of {@code file}. The store may move the file instead of copying it; the caller deletes
+     * whatever is left at {@code file} afterwards.
+     */
+    default Blob write(final Path file, final String digest) {
+        try {
+            return write(Files.readAllBytes(file), digest);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Takes another reference to a stored payload with the given digest, if the store shares payloads. */
+    default Optional<Blob> retain(final String digest) {
+        return Optional.empty();
+    }
+
+    /** Drops one reference; returns {@code true} when the payload itself was freed. */
+    boolean release(Blob blob);
+}
@@ -0,0 +1,102 @@
+package com.github.laplusijns.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed decorator: identical payloads are stored once in the delegate and reference counted, so
+ * releasing one handle never frees bytes another cache entry still points to.
+ */
+public class DedupBlobStore implements BlobStore {
+
+    private final BlobStore delegate;
+    private final Map<String, SharedBlob> blobs = new ConcurrentHashMap<>();
+
+    public DedupBlobStore(final BlobStore delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Blob write(final byte[] bytes, final String digest) {
+        // 同一 digest 的並行寫入在 compute 內序列化，只會寫入一份
+        return blobs.compute(digest, (_, existing) -> {
+            if (existing != null) {
+                existing.refs++;
+                return existing;
+            }
+            return new SharedBlob(delegate.write(bytes, digest));
+        });
+    }
+
+    @Override
+    public Blob write(final Path file, final String digest) {
+        return blobs.compute(digest, (_, existing) -> {
+            if (existing != null) {
+                existing.refs++;
+                return existing;
+            }
+            return new SharedBlob(delegate.write(file, digest));
+        });
+    }
+
+    @Override
+    public Optional<Blob> retain(final String digest) {
+        return Optional.ofNullable(blobs.computeIfPresent(digest, (_, existing) -> {
+            existing.refs++;
+            return existing;
+        }));
+    }
+
+    @Override
+    public boolean release(final Blob blob) {
+        final boolean[] freed = {false};
+        blobs.computeIfPresent(blob.digest(), (_, existing) -> {
+            if (existing != blob || --existing.refs > 0) {
+                return existing;
+            }
+            delegate.release(existing.delegate);
+            freed[0] = true;
+            return null;
+        });
+        return freed[0];
+    }
+
+    public int distinctBlobs() {
+        return blobs.size();
+    }
+
+    static final class SharedBlob implements Blob {
+
+        private final Blob delegate;
+        // 只在 ConcurrentHashMap.compute 內存取
+        private int refs = 1;
+
+        SharedBlob(final Blob delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public String digest() {
+            return delegate.digest();
+        }
+
+        @Override
+        public byte[] bytes() {
+            return delegate.bytes();
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return delegate.openStream();
+        }
+    }
+}
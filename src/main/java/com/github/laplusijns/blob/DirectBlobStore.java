@@ -0,0 +1,51 @@
+package com.github.laplusijns.blob;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class DirectBlobStore implements BlobStore {
+
+    @Override
+    public Blob write(final byte[] bytes, final String digest) {
+        final Arena arena = Arena.ofShared();
+        final MemorySegment segment = arena.allocate(bytes.length);
+        MemorySegment.copy(MemorySegment.ofArray(bytes), 0, segment, 0, bytes.length);
+        return new DirectBlob(arena, segment, digest);
+    }
+
+    @Override
+    public Blob write(final Path file, final String digest) {
+        final Arena arena = Arena.ofShared();
+        // 透過暫時的 mapping 直接複製到 off-heap，不經過 heap
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                Arena mapping = Arena.ofConfined()) {
+            final long size = channel.size();
+            final MemorySegment source = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, mapping);
+            final MemorySegment segment = arena.allocate(size);
+            MemorySegment.copy(source, 0, segment, 0, size);
+            return new DirectBlob(arena, segment, digest);
+        } catch (IOException e) {
+            arena.close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean release(final Blob blob) {
+        if (blob instanceof final DirectBlob directBlob) {
+            directBlob.free();
+        }
+        return true;
+    }
+
+    static final class DirectBlob extends SegmentBlob {
+        DirectBlob(final Arena arena, final MemorySegment segment, final String digest) {
+            super(arena, segment, digest);
+        }
+    }
+}
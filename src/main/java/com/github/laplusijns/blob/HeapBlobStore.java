@@ -0,0 +1,31 @@
+package com.github.laplusijns.blob;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+public class HeapBlobStore implements BlobStore {
+
+    @Override
+    public Blob write(final byte[] bytes, final String digest) {
+        return new HeapBlob(bytes, digest);
+    }
+
+    @Override
+    public boolean release(final Blob blob) {
+        // GC 回收
+        return true;
+    }
+
+    record HeapBlob(byte[] bytes, String digest) implements Blob {
+
+        @Override
+        public int size() {
+            return bytes.length;
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+}
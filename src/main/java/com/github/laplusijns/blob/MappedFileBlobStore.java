@@ -0,0 +1,103 @@
+package com.github.laplusijns.blob;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Spills every payload into its own file under {@code directory} and keeps it memory-mapped, so the page cache
+ * rather than the Java heap holds the bytes.
+ */
+public class MappedFileBlobStore implements BlobStore {
+
+    static final String SUFFIX = ".blob";
+
+    private final Path directory;
+
+    public MappedFileBlobStore(final Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            // 上次執行遺留的檔案已無對應的 cache entry
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (final Path path : stale) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Blob write(final byte[] bytes, final String digest) {
+        final Path path = directory.resolve(UUID.randomUUID() + SUFFIX);
+        final Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MemorySegment segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes.length, arena);
+            MemorySegment.copy(MemorySegment.ofArray(bytes), 0, segment, 0, bytes.length);
+            return new MappedBlob(arena, segment, digest, path);
+        } catch (IOException e) {
+            arena.close();
+            deleteQuietly(path);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Blob write(final Path file, final String digest) {
+        final Path path = directory.resolve(UUID.randomUUID() + SUFFIX);
+        final Arena arena = Arena.ofShared();
+        try {
+            // 同一個檔案系統時只是改名
+            Files.move(file, path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+                return new MappedBlob(arena, segment, digest, path);
+            }
+        } catch (IOException e) {
+            arena.close();
+            deleteQuietly(path);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean release(final Blob blob) {
+        if (blob instanceof final MappedBlob mappedBlob) {
+            mappedBlob.free();
+            deleteQuietly(mappedBlob.path());
+        }
+        return true;
+    }
+
+    private static void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException _) {
+            // 下次啟動時清除
+        }
+    }
+
+    static final class MappedBlob extends SegmentBlob {
+
+        private final Path path;
+
+        MappedBlob(final Arena arena, final MemorySegment segment, final String digest, final Path path) {
+            super(arena, segment, digest);
+            this.path = path;
+        }
+
+        Path path() {
+            return path;
+        }
+    }
+}
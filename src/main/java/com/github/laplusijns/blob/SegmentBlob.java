@@ -0,0 +1,77 @@
+package com.github.laplusijns.blob;
+
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+
+/**
+ * Blob backed by an off-heap {@link MemorySegment}; closing the owning arena frees (or unmaps) the memory
+ * immediately instead of waiting for a GC cycle.
+ */
+abstract class SegmentBlob implements Blob {
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final String digest;
+
+    SegmentBlob(final Arena arena, final MemorySegment segment, final String digest) {
+        this.arena = arena;
+        this.segment = segment;
+        this.digest = digest;
+    }
+
+    @Override
+    public int size() {
+        return (int) segment.byteSize();
+    }
+
+    @Override
+    public String digest() {
+        return digest;
+    }
+
+    @Override
+    public byte[] bytes() {
+        return segment.toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new ByteBufferInputStream(segment.asByteBuffer().asReadOnlyBuffer());
+    }
+
+    void free() {
+        arena.close();
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (!buffer.hasRemaining()) {
+                return len == 0 ? 0 : -1;
+            }
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
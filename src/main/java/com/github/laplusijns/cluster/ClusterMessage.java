@@ -0,0 +1,129 @@
+package com.github.laplusijns.cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * One replicated cache mutation. {@code key} is the image uuid or the text id, {@code origin} the advertised URL
+ * of the node the mutation happened on, which for images is also where the bytes are fetched from. A snapshot is
+ * framed by {@code SNAPSHOT_BEGIN} and {@code SNAPSHOT_END}, so the receiver can drop what the sender no longer
+ * has.
+ */
+public record ClusterMessage(
+        Type type,
+        String origin,
+        String room,
+        String key,
+        long expired,
+        @Nullable String text,
+        @Nullable Image image) {
+
+    public enum Type {
+        IMAGE_PUT,
+        IMAGE_UPDATE,
+        IMAGE_DELETE,
+        IMAGE_CLEAR,
+        TEXT_PUT,
+        TEXT_DELETE,
+        TEXT_CLEAR,
+        // 以下新增於尾端，序號不變
+        SNAPSHOT_BEGIN,
+        SNAPSHOT_END
+    }
+
+    /** Image metadata; payloads are described by size and digest only. */
+    public record Image(
+            @Nullable String filename,
+            @Nullable String contentType,
+            @Nullable Integer width,
+            @Nullable Integer height,
+            int size,
+            String digest,
+            @Nullable Blob thumbnail) {}
+
+    public record Blob(int width, int height, int size, String digest) {}
+
+    void write(final DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        writeString(out, origin);
+        writeString(out, room);
+        writeString(out, key);
+        out.writeLong(expired);
+        writeNullable(out, text);
+        out.writeBoolean(image != null);
+        if (image != null) {
+            writeNullable(out, image.filename());
+            writeNullable(out, image.contentType());
+            out.writeInt(image.width() == null ? -1 : image.width());
+            out.writeInt(image.height() == null ? -1 : image.height());
+            out.writeInt(image.size());
+            writeString(out, image.digest());
+            out.writeBoolean(image.thumbnail() != null);
+            if (image.thumbnail() != null) {
+                out.writeInt(image.thumbnail().width());
+                out.writeInt(image.thumbnail().height());
+                out.writeInt(image.thumbnail().size());
+                writeString(out, image.thumbnail().digest());
+            }
+        }
+    }
+
+    static ClusterMessage read(final DataInputStream in) throws IOException {
+        final Type type = Type.values()[in.readUnsignedByte()];
+        final String origin = readString(in);
+        final String room = readString(in);
+        final String key = readString(in);
+        final long expired = in.readLong();
+        final String text = readNullable(in);
+        Image image = null;
+        if (in.readBoolean()) {
+            final String filename = readNullable(in);
+            final String contentType = readNullable(in);
+            final int width = in.readInt();
+            final int height = in.readInt();
+            final int size = in.readInt();
+            final String digest = readString(in);
+            final Blob thumbnail = in.readBoolean()
+                    ? new Blob(in.readInt(), in.readInt(), in.readInt(), readString(in))
+                    : null;
+            image = new Image(
+                    filename,
+                    contentType,
+                    width < 0 ? null : width,
+                    height < 0 ? null : height,
+                    size,
+                    digest,
+                    thumbnail);
+        }
+        return new ClusterMessage(type, origin, room, key, expired, text, image);
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("corrupt cluster message");
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullable(final DataOutputStream out, @Nullable final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    @Nullable
+    private static String readNullable(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+}
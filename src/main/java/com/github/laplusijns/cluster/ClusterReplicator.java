@@ -0,0 +1,321 @@
+package com.github.laplusijns.cluster;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.laplusijns.CacheJournal;
+import com.github.laplusijns.ExpiredAt;
+import com.github.laplusijns.FileObject;
+import com.github.laplusijns.ImageCache;
+import com.github.laplusijns.JocbProperties;
+import com.github.laplusijns.TextCache;
+import com.github.laplusijns.TextObject;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * Replicates {@link ImageCache} and {@link TextCache} mutations to the other nodes and applies theirs locally,
+ * which in turn publishes the usual cache events to this node's subscribers.
+ *
+ * <p>Images stay owned by the node they were uploaded to: peers get the metadata with a {@link RemoteBlob} that
+ * downloads the payload from the owner on first read. Capacity evictions are local decisions and are only
+ * replicated for images this node owns, since peers could no longer fetch them. Mutations applied from a peer
+ * are not sent again.
+ *
+ * <p>A peer's snapshot is authoritative for what this node replicated from it: images owned by the peer and
+ * texts last received from it that the snapshot no longer lists were deleted while the nodes were apart, and
+ * are dropped here too.
+ */
+@Component
+@ConditionalOnProperty(prefix = "jocb.cluster", name = "enabled", havingValue = "true")
+public class ClusterReplicator implements CacheJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterReplicator.class);
+
+    // 套用其他節點的變更時為 true，避免再次廣播
+    private final ThreadLocal<Boolean> applying = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    // 正在接收快照的節點 -> 快照列出的 key；每個節點的訊息依序處理
+    private final Map<String, Set<Entry>> snapshots = new ConcurrentHashMap<>();
+    // 從其他節點收到的文字，與文字同時過期
+    private final Cache<Entry, Replica> replicatedTexts = Caffeine.newBuilder()
+            .expireAfter(new ExpiredAt<Entry, Replica>(Replica::expired))
+            .build();
+
+    ImageCache imageCache;
+    TextCache textCache;
+    ClusterTransport transport;
+    String origin;
+
+    public ClusterReplicator(
+            final ImageCache imageCache,
+            final TextCache textCache,
+            final ClusterTransport transport,
+            final JocbProperties jocbProperties) {
+        super();
+        this.imageCache = imageCache;
+        this.textCache = textCache;
+        this.transport = transport;
+        this.origin = origin(jocbProperties);
+    }
+
+    static String origin(final JocbProperties jocbProperties) {
+        return jocbProperties.getCluster().getAdvertisedUrl().replaceAll("/+$", "");
+    }
+
+    @PostConstruct
+    void start() {
+        imageCache.journal(this);
+        textCache.journal(this);
+        transport.start(this::receive, this::snapshot);
+    }
+
+    @Override
+    public void imagePut(final FileObject fileObject) {
+        if (fileObject.blob().local()) {
+            send(
+                    ClusterMessage.Type.IMAGE_PUT,
+                    fileObject.room(),
+                    fileObject.uuid(),
+                    fileObject.expired(),
+                    null,
+                    image(fileObject));
+        }
+    }
+
+    @Override
+    public void imageUpdate(final FileObject fileObject) {
+        if (fileObject.blob().local()) {
+            send(
+                    ClusterMessage.Type.IMAGE_UPDATE,
+                    fileObject.room(),
+                    fileObject.uuid(),
+                    fileObject.expired(),
+                    null,
+                    image(fileObject));
+        }
+    }
+
+    @Override
+    public void imageDelete(final String room, final String uuid) {
+        send(ClusterMessage.Type.IMAGE_DELETE, room, uuid, 0, null, null);
+    }
+
+    @Override
+    public void imageEvict(final FileObject fileObject) {
+        if (fileObject.blob().local()) {
+            imageDelete(fileObject.room(), fileObject.uuid());
+        }
+    }
+
+    @Override
+    public void imageClear(final String room) {
+        send(ClusterMessage.Type.IMAGE_CLEAR, room, "", 0, null, null);
+    }
+
+    @Override
+    public void textPut(final TextObject textObject) {
+        if (!applying.get()) {
+            // 本節點自行寫入後，不再隨來源節點的快照刪除
+            replicatedTexts.invalidate(new Entry(textObject.room(), textObject.id()));
+        }
+        send(
+                ClusterMessage.Type.TEXT_PUT,
+                textObject.room(),
+                textObject.id(),
+                textObject.expired(),
+                textObject.text(),
+                null);
+    }
+
+    @Override
+    public void textDelete(final String room, final String id) {
+        replicatedTexts.invalidate(new Entry(room, id));
+        send(ClusterMessage.Type.TEXT_DELETE, room, id, 0, null, null);
+    }
+
+    @Override
+    public void textEvict(final String room, final String id) {
+        // 文字沒有擁有者，容量淘汰只影響本節點
+        replicatedTexts.invalidate(new Entry(room, id));
+    }
+
+    @Override
+    public void textClear(final String room) {
+        replicatedTexts.asMap().keySet().removeIf(entry -> entry.room().equals(room));
+        send(ClusterMessage.Type.TEXT_CLEAR, room, "", 0, null, null);
+    }
+
+    private void send(
+            final ClusterMessage.Type type,
+            final String room,
+            final String key,
+            final long expired,
+            @Nullable final String text,
+            final ClusterMessage.@Nullable Image image) {
+        if (!applying.get()) {
+            transport.send(new ClusterMessage(type, origin, room, key, expired, text, image));
+        }
+    }
+
+    private void receive(final ClusterMessage message) {
+        if (origin.equals(message.origin())) {
+            return;
+        }
+        applying.set(Boolean.TRUE);
+        try {
+            switch (message.type()) {
+                case SNAPSHOT_BEGIN -> snapshots.put(message.origin(), ConcurrentHashMap.newKeySet());
+                case SNAPSHOT_END -> reconcile(message.origin());
+                case IMAGE_PUT -> {
+                    imageCache.restore(fileObject(message));
+                    listed(message);
+                }
+                case IMAGE_UPDATE -> {
+                    final FileObject fileObject = fileObject(message);
+                    imageCache.update(
+                            message.key(), fileObject.width(), fileObject.height(), fileObject.thumbnail());
+                }
+                case IMAGE_DELETE -> imageCache.delete(message.room(), message.key());
+                case IMAGE_CLEAR -> imageCache.deleteAllFiles(message.room());
+                case TEXT_PUT -> {
+                    textCache.put(message.room(), Objects.requireNonNull(message.text()), message.expired());
+                    replicatedTexts.put(
+                            new Entry(message.room(), message.key()), new Replica(message.origin(), message.expired()));
+                    listed(message);
+                }
+                case TEXT_DELETE -> textCache.delete(message.room(), message.key());
+                case TEXT_CLEAR -> textCache.deleteAllTexts(message.room());
+            }
+        } catch (RuntimeException e) {
+            log.warn("cannot apply {} from {}", message.type(), message.origin(), e);
+        } finally {
+            applying.remove();
+        }
+    }
+
+    private void listed(final ClusterMessage message) {
+        final Set<Entry> listed = snapshots.get(message.origin());
+        if (listed != null) {
+            listed.add(new Entry(message.room(), message.key()));
+        }
+    }
+
+    /** Drops what was replicated from {@code peer} but is missing from its snapshot. */
+    private void reconcile(final String peer) {
+        final Set<Entry> listed = snapshots.remove(peer);
+        if (listed == null) {
+            return;
+        }
+        for (final FileObject fileObject : imageCache.all()) {
+            if (fileObject.blob() instanceof final RemoteBlob remote
+                    && remote.origin().equals(peer)
+                    && !listed.contains(new Entry(fileObject.room(), fileObject.uuid()))) {
+                imageCache.delete(fileObject.room(), fileObject.uuid());
+            }
+        }
+        replicatedTexts.asMap().forEach((entry, replica) -> {
+            if (replica.origin().equals(peer) && !listed.contains(entry)) {
+                textCache.delete(entry.room(), entry.key());
+                replicatedTexts.asMap().remove(entry, replica);
+            }
+        });
+    }
+
+    /**
+     * Live entries to send to a peer that (re)connects, between {@code SNAPSHOT_BEGIN} and {@code SNAPSHOT_END}:
+     * images this node owns and texts it did not receive from a peer. Passing on a peer's texts would bring back
+     * ones that peer deleted while the nodes were apart.
+     */
+    private List<ClusterMessage> snapshot() {
+        final List<ClusterMessage> messages = new ArrayList<>();
+        messages.add(new ClusterMessage(ClusterMessage.Type.SNAPSHOT_BEGIN, origin, "", "", 0, null, null));
+        for (final FileObject fileObject : imageCache.all()) {
+            if (fileObject.blob().local()) {
+                messages.add(new ClusterMessage(
+                        ClusterMessage.Type.IMAGE_PUT,
+                        origin,
+                        fileObject.room(),
+                        fileObject.uuid(),
+                        fileObject.expired(),
+                        null,
+                        image(fileObject)));
+            }
+        }
+        for (final TextObject textObject : textCache.all()) {
+            if (replicatedTexts.getIfPresent(new Entry(textObject.room(), textObject.id())) != null) {
+                continue;
+            }
+            messages.add(new ClusterMessage(
+                    ClusterMessage.Type.TEXT_PUT,
+                    origin,
+                    textObject.room(),
+                    textObject.id(),
+                    textObject.expired(),
+                    textObject.text(),
+                    null));
+        }
+        messages.add(new ClusterMessage(ClusterMessage.Type.SNAPSHOT_END, origin, "", "", 0, null, null));
+        return messages;
+    }
+
+    private static ClusterMessage.Image image(final FileObject fileObject) {
+        final FileObject.Thumbnail thumbnail = fileObject.thumbnail();
+        return new ClusterMessage.Image(
+                fileObject.originalFilename(),
+                fileObject.contentType(),
+                fileObject.width(),
+                fileObject.height(),
+                fileObject.blob().size(),
+                fileObject.blob().digest(),
+                thumbnail == null || !thumbnail.blob().local()
+                        ? null
+                        : new ClusterMessage.Blob(
+                                thumbnail.width(),
+                                thumbnail.height(),
+                                thumbnail.blob().size(),
+                                thumbnail.blob().digest()));
+    }
+
+    private static FileObject fileObject(final ClusterMessage message) {
+        final ClusterMessage.Image image = Objects.requireNonNull(message.image());
+        final ClusterMessage.Blob thumbnail = image.thumbnail();
+        return new FileObject(
+                message.expired(),
+                image.filename(),
+                new RemoteBlob(message.origin(), "/blob/" + segment(message.key()), image.size(), image.digest()),
+                message.key(),
+                image.width(),
+                image.height(),
+                image.contentType(),
+                thumbnail == null
+                        ? null
+                        : new FileObject.Thumbnail(
+                                thumbnail.width(),
+                                thumbnail.height(),
+                                new RemoteBlob(
+                                        message.origin(),
+                                        "/blob/thumbnail/" + segment(message.key()),
+                                        thumbnail.size(),
+                                        thumbnail.digest())),
+                message.room());
+    }
+
+    private static String segment(final String key) {
+        return UriUtils.encodePathSegment(key, StandardCharsets.UTF_8);
+    }
+
+    private record Entry(String room, String key) {}
+
+    private record Replica(String origin, long expired) {}
+}
@@ -0,0 +1,25 @@
+package com.github.laplusijns.cluster;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Carries {@link ClusterMessage}s between nodes. Delivery is best effort and ordered per sending node; a node
+ * that (re)joins receives every peer's {@code snapshot} before any later message from that peer. The {@code
+ * origin} of a delivered message identifies the sending node as the transport knows it, not as the message
+ * claims.
+ */
+public interface ClusterTransport extends AutoCloseable {
+
+    /**
+     * @param receiver called for every message from another node, one message at a time per sending node
+     * @param snapshot current local state, sent to peers that connect
+     */
+    void start(Consumer<ClusterMessage> receiver, Supplier<List<ClusterMessage>> snapshot);
+
+    void send(ClusterMessage message);
+
+    @Override
+    void close();
+}
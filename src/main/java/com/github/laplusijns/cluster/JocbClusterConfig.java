@@ -0,0 +1,27 @@
+package com.github.laplusijns.cluster;
+
+import com.github.laplusijns.JocbProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(prefix = "jocb.cluster", name = "enabled", havingValue = "true")
+public class JocbClusterConfig {
+
+    @Bean
+    ClusterTransport clusterTransport(final JocbProperties jocbProperties) {
+        final JocbProperties.Cluster cluster = jocbProperties.getCluster();
+        return switch (cluster.getTransport()) {
+            case LOCAL -> new LocalClusterTransport();
+            case TCP ->
+                new TcpClusterTransport(
+                        cluster.getBindAddress(),
+                        cluster.getPort(),
+                        cluster.getPeers().stream().map(TcpClusterTransport.Node::parse).toList(),
+                        cluster.getSecret(),
+                        ClusterReplicator.origin(jocbProperties),
+                        cluster.getQueueSize());
+        };
+    }
+}
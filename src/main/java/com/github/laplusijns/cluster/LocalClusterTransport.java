@@ -0,0 +1,73 @@
+package com.github.laplusijns.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * In-process stand-in: every transport started in the same JVM is a peer. Lets several application contexts
+ * form a cluster in one test or benchmark without opening sockets.
+ */
+public class LocalClusterTransport implements ClusterTransport {
+
+    private static final List<LocalClusterTransport> MEMBERS = new CopyOnWriteArrayList<>();
+
+    // 每個成員以單一執行緒依序處理收到的訊息，與 TCP 連線相同
+    private volatile ExecutorService inbox;
+    private Consumer<ClusterMessage> receiver;
+    private Supplier<List<ClusterMessage>> snapshot;
+
+    @Override
+    public void start(final Consumer<ClusterMessage> receiver, final Supplier<List<ClusterMessage>> snapshot) {
+        this.receiver = receiver;
+        this.snapshot = snapshot;
+        join();
+    }
+
+    /** Joins again after {@link #close()}, exchanging snapshots the way a TCP node does when it reconnects. */
+    void rejoin() {
+        join();
+    }
+
+    private void join() {
+        inbox = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("jocb-cluster-local").factory());
+        synchronized (MEMBERS) {
+            for (final LocalClusterTransport member : MEMBERS) {
+                member.deliver(snapshot.get());
+                deliver(member.snapshot.get());
+            }
+            MEMBERS.add(this);
+        }
+    }
+
+    private void deliver(final List<ClusterMessage> messages) {
+        try {
+            inbox.execute(() -> messages.forEach(receiver));
+        } catch (RejectedExecutionException _) {
+            // 成員剛離開，重新加入時以快照補上
+        }
+    }
+
+    @Override
+    public void send(final ClusterMessage message) {
+        // 已離開的成員不再送出
+        if (!MEMBERS.contains(this)) {
+            return;
+        }
+        for (final LocalClusterTransport member : MEMBERS) {
+            if (member != this) {
+                member.deliver(List.of(message));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        MEMBERS.remove(this);
+        inbox.shutdown();
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.laplusijns.cluster;
+
+import com.github.laplusijns.blob.Blob;
+import com.github.laplusijns.blob.Digests;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Payload held by another node. Nothing is transferred until the first read, which downloads it once from the
+ * owner's {@code /blob} endpoint and keeps it on the heap for later reads. A download whose SHA-256 does not match
+ * the replicated digest fails and is not kept, so the next read tries again.
+ */
+final class RemoteBlob implements Blob {
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private final String origin;
+    private final URI uri;
+    private final int size;
+    private final String digest;
+    private volatile byte[] bytes;
+
+    /** @param origin advertised URL of the owning node, from the cluster configuration */
+    RemoteBlob(final String origin, final String path, final int size, final String digest) {
+        this.origin = origin;
+        this.uri = URI.create(origin + path);
+        this.size = size;
+        this.digest = digest;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String digest() {
+        return digest;
+    }
+
+    @Override
+    public byte[] bytes() {
+        byte[] local = bytes;
+        if (local == null) {
+            synchronized (this) {
+                local = bytes;
+                if (local == null) {
+                    local = fetch();
+                    bytes = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new ByteArrayInputStream(bytes());
+    }
+
+    @Override
+    public boolean local() {
+        return false;
+    }
+
+    String origin() {
+        return origin;
+    }
+
+    private byte[] fetch() {
+        try {
+            final HttpResponse<byte[]> response = CLIENT.send(
+                    HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IOException("fetching %s returned %d".formatted(uri, response.statusCode()));
+            }
+            final byte[] body = response.body();
+            // 內容須與複製過來的 digest 相符才快取
+            if (body.length != size || !Digests.sha256(body).equals(digest)) {
+                throw new IOException("fetching %s returned content not matching digest %s".formatted(uri, digest));
+            }
+            return body;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("interrupted while fetching " + uri, e));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.github.laplusijns.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Peer-to-peer transport: every node listens on {@code jocb.cluster.bind-address:port} and keeps one outbound
+ * connection to each configured peer. Messages are framed with {@link ClusterMessage#write} and queued per peer;
+ * while a peer is unreachable its queue fills up to {@code jocb.cluster.queue-size} and further messages are
+ * dropped. Messages written since the last flush are sent again after a reconnect, and each (re)connect starts
+ * with the local snapshot so a restarted peer catches up on live entries.
+ *
+ * <p>Only configured peer hosts may connect. Both ends then prove knowledge of {@code jocb.cluster.secret} with
+ * an HMAC over fresh nonces, and the connecting node names its advertised URL, which must be the one configured
+ * for its host. Messages received on the connection carry that configured URL as their origin, whatever the
+ * sender wrote.
+ */
+public class TcpClusterTransport implements ClusterTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpClusterTransport.class);
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration HANDSHAKE_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+    private static final int NONCE_SIZE = 32;
+    // 未 flush 的訊息失敗時需重送，累積到此數量就先 flush
+    private static final int MAX_UNFLUSHED = 256;
+    private static final String HMAC = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** Configured peer: where to connect and the advertised URL its image bytes are fetched from. */
+    public record Node(String host, int port, String url) {
+
+        /** Parses {@code host:port=advertised-url}. */
+        public static Node parse(final String peer) {
+            final int equals = peer.indexOf('=');
+            final int colon = peer.lastIndexOf(':', equals);
+            if (equals < 0 || colon < 0) {
+                throw new IllegalArgumentException("cluster peer must be host:port=advertised-url: " + peer);
+            }
+            return new Node(
+                    peer.substring(0, colon).strip(),
+                    Integer.parseInt(peer.substring(colon + 1, equals).strip()),
+                    peer.substring(equals + 1).strip().replaceAll("/+$", ""));
+        }
+    }
+
+    private final String bindAddress;
+    private final int port;
+    private final List<Node> nodes;
+    private final byte[] secret;
+    private final String origin;
+    private final int queueSize;
+    private final List<Peer> outbound = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private ServerSocket server;
+    private volatile boolean closed;
+
+    /**
+     * @param origin this node's advertised URL, as configured on the peers
+     */
+    public TcpClusterTransport(
+            final String bindAddress,
+            final int port,
+            final List<Node> nodes,
+            final String secret,
+            final String origin,
+            final int queueSize) {
+        if (secret.isBlank()) {
+            throw new IllegalStateException("jocb.cluster.secret must be set for the TCP transport");
+        }
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.nodes = List.copyOf(nodes);
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.origin = origin;
+        this.queueSize = queueSize;
+    }
+
+    @Override
+    public void start(final Consumer<ClusterMessage> receiver, final Supplier<List<ClusterMessage>> snapshot) {
+        try {
+            server = new ServerSocket();
+            server.bind(new InetSocketAddress(bindAddress, port));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        threads.add(Thread.ofVirtual().name("jocb-cluster-accept").start(() -> accept(receiver)));
+        for (final Node node : nodes) {
+            final Peer target = new Peer(new InetSocketAddress(node.host(), node.port()), snapshot);
+            outbound.add(target);
+            threads.add(Thread.ofVirtual().name("jocb-cluster-" + node.host()).start(target::run));
+        }
+    }
+
+    @Override
+    public void send(final ClusterMessage message) {
+        for (final Peer peer : outbound) {
+            if (!peer.queue.offer(message)) {
+                log.warn("cluster queue to {} is full, dropping {}", peer.address, message.type());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException _) {
+            // 關閉中
+        }
+        threads.forEach(Thread::interrupt);
+    }
+
+    private void accept(final Consumer<ClusterMessage> receiver) {
+        while (!closed) {
+            try {
+                final Socket socket = server.accept();
+                Thread.ofVirtual().name("jocb-cluster-in").start(() -> read(socket, receiver));
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("cluster accept failed", e);
+                }
+            }
+        }
+    }
+
+    private void read(final Socket socket, final Consumer<ClusterMessage> receiver) {
+        try (socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            final Node node = authenticate(socket, in, out);
+            if (node == null) {
+                return;
+            }
+            while (!closed) {
+                final ClusterMessage message = ClusterMessage.read(in);
+                // 來源以設定為準，訊息內的 origin 不可信
+                receiver.accept(new ClusterMessage(
+                        message.type(),
+                        node.url(),
+                        message.room(),
+                        message.key(),
+                        message.expired(),
+                        message.text(),
+                        message.image()));
+            }
+        } catch (EOFException _) {
+            // peer 關閉連線
+        } catch (IOException e) {
+            log.debug("cluster connection from {} lost", socket.getRemoteSocketAddress(), e);
+        }
+    }
+
+    /** Server side of the handshake; the configured peer on the other end, or {@code null} to hang up. */
+    @Nullable
+    private Node authenticate(final Socket socket, final DataInputStream in, final DataOutputStream out)
+            throws IOException {
+        final InetAddress remote = socket.getInetAddress();
+        final List<Node> candidates = new ArrayList<>();
+        for (final Node node : nodes) {
+            if (resolves(node.host(), remote)) {
+                candidates.add(node);
+            }
+        }
+        if (candidates.isEmpty()) {
+            log.warn("refusing cluster connection from unconfigured host {}", remote);
+            return null;
+        }
+        socket.setSoTimeout((int) HANDSHAKE_TIMEOUT.toMillis());
+        final byte[] serverNonce = nonce();
+        out.write(serverNonce);
+        out.flush();
+        final byte[] clientNonce = in.readNBytes(NONCE_SIZE);
+        final String url = in.readUTF();
+        final byte[] proof = in.readNBytes(NONCE_SIZE);
+        final Node node = candidates.stream()
+                .filter(n -> n.url().equals(url))
+                .findFirst()
+                .orElse(null);
+        if (node == null || !MessageDigest.isEqual(proof, mac("client", serverNonce, clientNonce, url))) {
+            log.warn("cluster peer {} failed authentication", remote);
+            return null;
+        }
+        out.write(mac("server", clientNonce, serverNonce, url));
+        out.flush();
+        socket.setSoTimeout(0);
+        return node;
+    }
+
+    private static boolean resolves(final String host, final InetAddress remote) {
+        try {
+            return Arrays.asList(InetAddress.getAllByName(host)).contains(remote);
+        } catch (IOException _) {
+            return false;
+        }
+    }
+
+    private static byte[] nonce() {
+        final byte[] nonce = new byte[NONCE_SIZE];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    private byte[] mac(final String role, final byte[] first, final byte[] second, final String url) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(secret, HMAC));
+            mac.update(role.getBytes(StandardCharsets.UTF_8));
+            mac.update(first);
+            mac.update(second);
+            return mac.doFinal(url.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final class Peer {
+
+        private final InetSocketAddress address;
+        private final Supplier<List<ClusterMessage>> snapshot;
+        private final BlockingQueue<ClusterMessage> queue = new ArrayBlockingQueue<>(queueSize);
+        // 已寫出但尚未 flush 的訊息，連線中斷時於重連後重送；只由此 peer 的執行緒存取
+        private final List<ClusterMessage> unflushed = new ArrayList<>();
+
+        private Peer(final InetSocketAddress address, final Supplier<List<ClusterMessage>> snapshot) {
+            this.address = address;
+            this.snapshot = snapshot;
+        }
+
+        private void run() {
+            Duration backoff = Duration.ofSeconds(1);
+            while (!closed) {
+                try (Socket socket = new Socket()) {
+                    socket.connect(address, (int) CONNECT_TIMEOUT.toMillis());
+                    final DataInputStream in =
+                            new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    final DataOutputStream out =
+                            new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    handshake(socket, in, out);
+                    for (final ClusterMessage message : snapshot.get()) {
+                        message.write(out);
+                    }
+                    // 快照之後依原順序重送上次未送達的訊息
+                    for (final ClusterMessage message : unflushed) {
+                        message.write(out);
+                    }
+                    out.flush();
+                    unflushed.clear();
+                    backoff = Duration.ofSeconds(1);
+                    while (!closed) {
+                        final ClusterMessage message = queue.take();
+                        unflushed.add(message);
+                        message.write(out);
+                        // 佇列清空時才 flush，突發的訊息合併成較少的封包
+                        if (queue.isEmpty() || unflushed.size() >= MAX_UNFLUSHED) {
+                            out.flush();
+                            unflushed.clear();
+                        }
+                    }
+                } catch (IOException e) {
+                    log.debug("cluster peer {} unreachable, retry in {}", address, backoff, e);
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException _) {
+                        return;
+                    }
+                    final Duration doubled = backoff.multipliedBy(2);
+                    backoff = doubled.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : doubled;
+                } catch (InterruptedException _) {
+                    return;
+                }
+            }
+        }
+
+        /** Client side: answers the server's nonce and checks that the server knows the secret too. */
+        private void handshake(final Socket socket, final DataInputStream in, final DataOutputStream out)
+                throws IOException {
+            socket.setSoTimeout((int) HANDSHAKE_TIMEOUT.toMillis());
+            final byte[] serverNonce = in.readNBytes(NONCE_SIZE);
+            final byte[] clientNonce = nonce();
+            out.write(clientNonce);
+            out.writeUTF(origin);
+            out.write(mac("client", serverNonce, clientNonce, origin));
+            out.flush();
+            final byte[] proof = in.readNBytes(NONCE_SIZE);
+            if (!MessageDigest.isEqual(proof, mac("server", clientNonce, serverNonce, origin))) {
+                throw new IOException("cluster peer " + address + " failed authentication");
+            }
+            socket.setSoTimeout(0);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.laplusijns.ocr;
+
+/**
+ * Streaming form of {@code text.replaceAll("\n{2,}", "\n")}: remembers whether the last emitted character was a
+ * newline, so a run split across chunks is still collapsed.
+ */
+final class NewlineCollapser {
+
+    private boolean newline;
+
+    String apply(final String chunk) {
+        final StringBuilder sb = new StringBuilder(chunk.length());
+        for (int i = 0; i < chunk.length(); i++) {
+            final char c = chunk.charAt(i);
+            if (c == '\n' && newline) {
+                continue;
+            }
+            newline = c == '\n';
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
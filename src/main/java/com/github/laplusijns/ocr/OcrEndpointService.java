@@ -1,27 +1,50 @@
 package com.github.laplusijns.ocr;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.laplusijns.ExpiredAt;
+import com.github.laplusijns.FileObject;
 import com.github.laplusijns.ImageCache;
+import com.github.laplusijns.JocbProperties;
+import com.github.laplusijns.JocbProperties.ImageTimeout;
 import com.github.laplusijns.LabelAndValue;
+import com.github.laplusijns.Room;
+import com.github.laplusijns.blob.Digests;
+import com.github.laplusijns.ocr.OcrPreprocessor.OcrImage;
 import com.vaadin.flow.server.auth.AnonymousAllowed;
 import com.vaadin.hilla.Endpoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.content.Content;
 import org.springframework.ai.content.Media;
 import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
@@ -31,22 +54,54 @@ import reactor.core.publisher.Sinks;
 @AnonymousAllowed
 public class OcrEndpointService {
 
+    static final String PROMPT = "解析圖中文字並輸出原始文字以及分行，不要額外符號或說明";
+    // 多張圖片共用一次呼叫時，要求以標記分隔每張的結果
+    static final String PACK_PROMPT = "以下共 %d 張圖片，依序處理每一張：先輸出單獨一行 ### 圖片序號（從 1 開始），再接該張結果。%s";
+    private static final String FALLBACK_CONTENT_TYPE = "image/png";
+    private static final Pattern PACK_MARKER = Pattern.compile("(?m)^###\\s*(\\d+)\\s*$");
+    private static final Logger log = LoggerFactory.getLogger(OcrEndpointService.class);
+
     ImageCache imageCache;
     Optional<ChatModel> chatModel;
     private final Map<String, Sinks.Many<OcrResponse>> channels = new ConcurrentHashMap<>();
-    ExecutorService executorService;
+    OcrScheduler ocrScheduler;
+    OcrPreprocessor ocrPreprocessor;
+    MeterRegistry meterRegistry;
+    ImageTimeout imageTimeout;
+    boolean streaming;
+    int imagesPerRequest;
+    // 等待同一個 key 結果的 session，串流中的片段會推送給全部
+    private final Map<OcrKey, Set<String>> listeners = new ConcurrentHashMap<>();
+    // 結果保留到來源圖片過期為止；進行中的 future 讓相同請求共用同一次模型呼叫
+    private final AsyncCache<OcrKey, OcrResult> ocrResults;
 
     public OcrEndpointService(
-            final ImageCache imageCache, final Optional<ChatModel> chatModel, final ExecutorService ocrExecutor) {
+            final ImageCache imageCache,
+            final Optional<ChatModel> chatModel,
+            final OcrScheduler ocrScheduler,
+            final OcrPreprocessor ocrPreprocessor,
+            final MeterRegistry meterRegistry,
+            final JocbProperties jocbProperties) {
         super();
         this.imageCache = imageCache;
         this.chatModel = chatModel;
-        this.executorService = ocrExecutor;
+        this.ocrScheduler = ocrScheduler;
+        this.ocrPreprocessor = ocrPreprocessor;
+        this.meterRegistry = meterRegistry;
+        this.imageTimeout = jocbProperties.getImageTimeout();
+        this.streaming = Boolean.TRUE.equals(jocbProperties.getOcr().getStreaming());
+        this.imagesPerRequest = Math.max(1, jocbProperties.getOcr().getImagesPerRequest());
+        this.ocrResults = Caffeine.newBuilder()
+                .expireAfter(new ExpiredAt<OcrKey, OcrResult>(OcrResult::expired))
+                .maximumSize(imageTimeout.getMaxSize())
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, ocrResults, "ocr");
     }
 
     @NonNull
-    public List<@NonNull LabelAndValue> lvs() {
-        return imageCache.all().stream()
+    public List<@NonNull LabelAndValue> lvs(@Nullable final String room) {
+        return imageCache.all(Room.of(room)).stream()
                 .map(t -> new LabelAndValue(t.uuid() + "  (" + t.originalFilename() + ")", t.uuid()))
                 .toList();
     }
@@ -59,6 +114,7 @@ public class OcrEndpointService {
     }
 
     private void cleanUp(final String jsessionid) {
+        ocrScheduler.cancel(jsessionid);
         final Sinks.Many<OcrResponse> sink = channels.remove(jsessionid);
         if (sink != null) {
             sink.tryEmitComplete();
@@ -73,48 +129,308 @@ public class OcrEndpointService {
     }
 
     public void ocrImageCache(@NonNull final String uuid, @NonNull final String jsessionid) {
-        runOcr(
-                () -> new ByteArrayResource(imageCache.file(uuid).bytes()),
-                imageCache.file(uuid).contentType(),
-                jsessionid);
+        final FileObject file = imageCache.file(uuid);
+        if (file == null) {
+            send(OcrResponse.error("image not found: " + uuid), jsessionid);
+            return;
+        }
+        runOcr(file.blob().digest(), file.expired(), () -> cachedImage(uuid, file), jsessionid);
+    }
+
+    /**
+     * OCR for several cached images. Results come back per uuid on the subscription as each one finishes; images
+     * without a cached or in-flight result are packed up to {@code jocb.ocr.images-per-request} per model call and
+     * the packs run through the {@link OcrScheduler} like single requests.
+     */
+    public void ocrImages(@NonNull final List<@NonNull String> uuids, @NonNull final String jsessionid) {
+        if (chatModel.isEmpty()) {
+            send(OcrResponse.error("ChatModel not configured"), jsessionid);
+            return;
+        }
+        final ChatModel chat = chatModel.get();
+        final String model = modelName(chat);
+        final List<PackItem> owned = new ArrayList<>();
+        for (final String uuid : new LinkedHashSet<>(uuids)) {
+            final FileObject file = imageCache.file(uuid);
+            if (file == null) {
+                send(OcrResponse.error(uuid, "image not found: " + uuid), jsessionid);
+                continue;
+            }
+            final OcrKey key = new OcrKey(file.blob().digest(), model, PROMPT);
+            final CompletableFuture<OcrResult> created = new CompletableFuture<>();
+            final CompletableFuture<OcrResult> existing = ocrResults.asMap().putIfAbsent(key, created);
+            if (existing == null) {
+                owned.add(new PackItem(uuid, file, key, created));
+            }
+            reply(existing == null ? created : existing, key, uuid, jsessionid);
+        }
+        for (int from = 0; from < owned.size(); from += imagesPerRequest) {
+            final List<PackItem> pack = owned.subList(from, Math.min(owned.size(), from + imagesPerRequest));
+            ocrScheduler
+                    .submit(jsessionid, () -> {
+                        ocrPack(chat, pack);
+                        return null;
+                    })
+                    .whenComplete((_, error) -> {
+                        if (error != null) {
+                            pack.forEach(item -> item.future().completeExceptionally(error));
+                        }
+                    });
+        }
+    }
+
+    private void reply(
+            final CompletableFuture<OcrResult> future, final OcrKey key, final String uuid, final String jsessionid) {
+        future.whenComplete((result, error) -> {
+            if (error == null) {
+                send(OcrResponse.success(uuid, result.text()), jsessionid);
+                return;
+            }
+            final Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            if (cause instanceof CancellationException) {
+                // 與 runOcr 相同：共用的工作屬於已離開的 session，仍在線上則重新排入自己的佇列
+                if (channels.containsKey(jsessionid)) {
+                    ocrResults.asMap().remove(key, future);
+                    ocrImages(List.of(uuid), jsessionid);
+                }
+            } else if (cause instanceof RejectedExecutionException) {
+                send(OcrResponse.rejected(uuid, cause.getMessage()), jsessionid);
+            } else {
+                send(OcrResponse.error(uuid, String.valueOf(cause.getMessage())), jsessionid);
+            }
+        });
+    }
+
+    private OcrImage cachedImage(final String uuid, final FileObject file) {
+        final byte[] bytes = imageCache.blob(uuid);
+        if (bytes.length == 0) {
+            throw new NoSuchElementException("image expired: " + uuid);
+        }
+        return ocrPreprocessor.prepare(file.blob().digest(), file.expired(), bytes, file.contentType());
     }
 
     public void ocrImageFile(@NonNull final MultipartFile file, final String jsessionid) {
         try {
             final byte[] bytes = file.getBytes();
             final String contentType = file.getContentType();
-            runOcr(() -> new ByteArrayResource(bytes), contentType, jsessionid);
+            final long expired = imageTimeout.expiredAt(null);
+            final String digest = Digests.sha256(bytes);
+            runOcr(
+                    digest,
+                    expired,
+                    () -> ocrPreprocessor.prepare(digest, expired, bytes, contentType),
+                    jsessionid);
         } catch (Exception e) {
             send(OcrResponse.error(e.getMessage()), jsessionid);
         }
     }
 
+    /**
+     * Answers from the result cache when the same content was already read with this model and prompt; otherwise
+     * joins the in-flight call for that key or queues one on the {@link OcrScheduler} for this session.
+     */
     private void runOcr(
-            final Supplier<Resource> resourceSupplier, @Nullable final String contentType, final String jsessionid) {
-        executorService.execute(() -> {
-            try {
-                final Resource resource = resourceSupplier.get();
+            final String digest,
+            final long expired,
+            final Supplier<OcrImage> image,
+            final String jsessionid) {
+        if (chatModel.isEmpty()) {
+            send(OcrResponse.error("ChatModel not configured"), jsessionid);
+            return;
+        }
+        final ChatModel chat = chatModel.get();
+        final OcrKey key = new OcrKey(digest, modelName(chat), PROMPT);
+        listeners.computeIfAbsent(key, _ -> ConcurrentHashMap.newKeySet()).add(jsessionid);
+        final CompletableFuture<OcrResult> future = ocrResults.get(
+                key,
+                (_, _) -> ocrScheduler.submit(
+                        jsessionid, () -> ocr(chat, key, image, expired)));
+        future.whenComplete((result, error) -> {
+            listeners.computeIfPresent(key, (_, sessions) -> {
+                sessions.remove(jsessionid);
+                return sessions.isEmpty() ? null : sessions;
+            });
+            if (error == null) {
+                send(OcrResponse.success(result.text()), jsessionid);
+                return;
+            }
+            final Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            if (cause instanceof CancellationException) {
+                // 共用的工作屬於已離開的 session，仍在線上則重新排入自己的佇列
+                if (channels.containsKey(jsessionid)) {
+                    ocrResults.asMap().remove(key, future);
+                    runOcr(digest, expired, image, jsessionid);
+                }
+            } else if (cause instanceof RejectedExecutionException) {
+                send(OcrResponse.rejected(cause.getMessage()), jsessionid);
+            } else {
+                send(OcrResponse.error(cause.getMessage()), jsessionid);
+            }
+        });
+    }
 
-                final UserMessage.Builder builder = UserMessage.builder().text("解析圖中文字並輸出原始文字以及分行，不要額外符號或說明");
+    private OcrResult ocr(
+            final ChatModel chat,
+            final OcrKey key,
+            final Supplier<OcrImage> imageSupplier,
+            final long expired) {
+        final long start = System.nanoTime();
+        try {
+            final UserMessage.Builder builder = UserMessage.builder().text(key.prompt());
 
-                if (contentType != null) {
-                    builder.media(new Media(MimeTypeUtils.parseMimeType(contentType), resource));
-                }
+            builder.media(media(imageSupplier.get()));
+
+            final Prompt prompt = new Prompt(builder.build());
+            final String text = streaming ? stream(chat, prompt, key, start) : call(chat, prompt);
 
-                final ChatModel model =
-                        chatModel.orElseThrow(() -> new IllegalStateException("ChatModel not configured"));
+            record(key.model(), "success", start);
+            return new OcrResult(text, expired);
+        } catch (RuntimeException e) {
+            record(key.model(), "error", start);
+            throw e;
+        }
+    }
 
-                final ChatResponse response = model.call(new Prompt(builder.build()));
-                final String text = Optional.ofNullable(response.getResult())
-                        .map(Generation::getOutput)
-                        .map(Content::getText)
-                        .orElseThrow(() -> new NoSuchElementException("AI No Response"));
+    /**
+     * One model call for all images of the pack, split on the {@code ### n} markers the prompt asks for. When the
+     * answer cannot be split, each image is read on its own instead.
+     */
+    private void ocrPack(final ChatModel chat, final List<PackItem> pack) {
+        if (pack.size() > 1) {
+            final String model = pack.getFirst().key().model();
+            final long start = System.nanoTime();
+            try {
+                final List<Media> media = new ArrayList<>();
+                for (final PackItem item : pack) {
+                    media.add(media(cachedImage(item.uuid(), item.file())));
+                }
+                final UserMessage message = UserMessage.builder()
+                        .text(PACK_PROMPT.formatted(pack.size(), PROMPT))
+                        .media(media)
+                        .build();
+                final List<String> texts = split(call(chat, new Prompt(message)), pack.size());
+                record(model, "success", start);
+                if (texts != null) {
+                    for (int i = 0; i < pack.size(); i++) {
+                        final PackItem item = pack.get(i);
+                        item.future().complete(new OcrResult(texts.get(i), item.file().expired()));
+                    }
+                    return;
+                }
+            } catch (RuntimeException e) {
+                record(model, "error", start);
+                log.warn("packed OCR of {} images failed, reading them one by one", pack.size(), e);
+            }
+        }
+        for (final PackItem item : pack) {
+            try {
+                item.future()
+                        .complete(ocr(
+                                chat, item.key(), () -> cachedImage(item.uuid(), item.file()), item.file().expired()));
+            } catch (RuntimeException e) {
+                item.future().completeExceptionally(e);
+            }
+        }
+    }
 
-                send(OcrResponse.success(text.replaceAll("\\n{2,}", "\n")), jsessionid);
+    // 上傳時未帶 Content-Type 的圖片仍要送出，模型多半能自行辨識實際格式
+    private static Media media(final OcrImage image) {
+        return new Media(
+                MimeTypeUtils.parseMimeType(image.contentType() == null ? FALLBACK_CONTENT_TYPE : image.contentType()),
+                new ByteArrayResource(image.bytes()));
+    }
 
-            } catch (Exception e) {
-                send(OcrResponse.error(e.getMessage()), jsessionid);
+    /** Sections in marker order, or {@code null} unless markers 1..count each appear exactly once in order. */
+    @Nullable
+    static List<String> split(final String text, final int count) {
+        final Matcher matcher = PACK_MARKER.matcher(text);
+        final List<String> sections = new ArrayList<>();
+        int expected = 1;
+        int bodyStart = -1;
+        while (matcher.find()) {
+            if (Integer.parseInt(matcher.group(1)) != expected++) {
+                return null;
             }
-        });
+            if (bodyStart >= 0) {
+                sections.add(text.substring(bodyStart, matcher.start()).strip());
+            }
+            bodyStart = matcher.end();
+        }
+        if (bodyStart < 0 || expected - 1 != count) {
+            return null;
+        }
+        sections.add(text.substring(bodyStart).strip());
+        return sections;
     }
+
+    private static String call(final ChatModel chat, final Prompt prompt) {
+        final ChatResponse response = chat.call(prompt);
+        final String text = Optional.ofNullable(response.getResult())
+                .map(Generation::getOutput)
+                .map(Content::getText)
+                .orElseThrow(() -> new NoSuchElementException("AI No Response"));
+        return text.replaceAll("\\n{2,}", "\n");
+    }
+
+    /**
+     * Pushes each normalised chunk as {@link OcrResponse.Result#PARTIAL} to every session waiting for this key and
+     * returns the full text. A retried attempt streams again from the start; the final {@code SUCCESS} carries the
+     * complete text, so clients replace what they accumulated.
+     */
+    private String stream(final ChatModel chat, final Prompt prompt, final OcrKey key, final long start) {
+        final NewlineCollapser collapser = new NewlineCollapser();
+        final StringBuilder text = new StringBuilder();
+        chat.stream(prompt)
+                .mapNotNull(ChatResponse::getResult)
+                .mapNotNull(generation -> generation.getOutput().getText())
+                .map(collapser::apply)
+                .filter(chunk -> !chunk.isEmpty())
+                .doOnNext(chunk -> {
+                    if (text.isEmpty()) {
+                        firstTextTimer(key.model()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                    text.append(chunk);
+                    final OcrResponse partial = OcrResponse.partial(chunk);
+                    listeners.getOrDefault(key, Set.of()).forEach(jsessionid -> send(partial, jsessionid));
+                })
+                .blockLast();
+        if (text.isEmpty()) {
+            throw new NoSuchElementException("AI No Response");
+        }
+        return text.toString();
+    }
+
+    private Timer firstTextTimer(final String model) {
+        return Timer.builder("jocb.ocr.first.text")
+                .description("time until the first streamed OCR text")
+                .tag("model", model)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private void record(final String model, final String outcome, final long start) {
+        Timer.builder("jocb.ocr.latency")
+                .description("OCR model call time")
+                .tag("model", model)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static String modelName(final ChatModel chat) {
+        final ChatOptions options = chat.getDefaultOptions();
+        return options == null || options.getModel() == null ? "default" : options.getModel();
+    }
+
+    // 以內容雜湊為 key，不同 uuid 的相同圖片共用結果
+    private record OcrKey(String digest, String model, String prompt) {}
+
+    private record OcrResult(String text, long expired) {}
+
+    private record PackItem(String uuid, FileObject file, OcrKey key, CompletableFuture<OcrResult> future) {}
 }
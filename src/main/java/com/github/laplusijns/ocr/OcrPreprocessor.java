@@ -0,0 +1,187 @@
+package com.github.laplusijns.ocr;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.laplusijns.ExpiredAt;
+import com.github.laplusijns.ImageProbe;
+import com.github.laplusijns.JocbProperties;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.jspecify.annotations.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shrinks images before they are sent to the model: subsampled decode through {@link ImageProbe}, downscale to
+ * {@code jocb.ocr.max-edge}, optional grayscale with a 1%–99% contrast stretch, and re-encode as {@code
+ * jocb.ocr.format}. The variant is cached by content digest until the source image expires; anything that cannot
+ * be decoded, or would not get smaller, is sent as uploaded and not cached, so the cache never holds a second copy
+ * of an original. Concurrent requests for the same digest wait for one preprocessing run, which happens on the
+ * first caller's thread outside the cache's locks.
+ */
+@Component
+public class OcrPreprocessor {
+
+    // JPEG 品質過低會讓細小文字糊掉
+    private static final float JPEG_QUALITY = 0.9f;
+
+    private final int maxEdge;
+    private final boolean grayscale;
+    private final boolean normalizeContrast;
+    private final String format;
+    private final AsyncCache<String, OcrImage> variants;
+
+    public OcrPreprocessor(final JocbProperties jocbProperties) {
+        super();
+        final JocbProperties.Ocr ocr = jocbProperties.getOcr();
+        this.maxEdge = ocr.getMaxEdge() > 0 ? ocr.getMaxEdge() : Integer.MAX_VALUE;
+        this.grayscale = Boolean.TRUE.equals(ocr.getGrayscale());
+        this.normalizeContrast = Boolean.TRUE.equals(ocr.getNormalizeContrast());
+        this.format = ocr.getFormat();
+        this.variants = Caffeine.newBuilder()
+                .expireAfter(new ExpiredAt<String, OcrImage>(OcrImage::expired))
+                .maximumSize(jocbProperties.getImageTimeout().getMaxSize())
+                .buildAsync();
+    }
+
+    /** Image to send for the content with this digest; {@code expired} bounds how long the variant is kept. */
+    public OcrImage prepare(
+            final String digest, final long expired, final byte[] bytes, @Nullable final String contentType) {
+        final CompletableFuture<OcrImage> created = new CompletableFuture<>();
+        final CompletableFuture<OcrImage> future = variants.get(digest, (_, _) -> created);
+        final OcrImage variant;
+        if (future == created) {
+            // 在 cache 外處理；結果為 null 或失敗時 future 會自 cache 移除
+            try {
+                variant = preprocess(bytes, expired);
+            } catch (IOException e) {
+                created.completeExceptionally(e);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                created.completeExceptionally(e);
+                throw e;
+            }
+            created.complete(variant);
+        } else {
+            try {
+                variant = future.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException io ? new UncheckedIOException(io) : e;
+            }
+        }
+        return variant != null ? variant : new OcrImage(bytes, contentType, expired);
+    }
+
+    /** Smaller re-encoded copy, or {@code null} when the original should be sent as is. */
+    @Nullable
+    private OcrImage preprocess(final byte[] bytes, final long expired) throws IOException {
+        final BufferedImage decoded = ImageProbe.decode(new ByteArrayInputStream(bytes), maxEdge);
+        if (decoded == null) {
+            return null;
+        }
+        BufferedImage image = scale(decoded);
+        if (grayscale) {
+            image = gray(image);
+            if (normalizeContrast) {
+                stretch(image);
+            }
+        }
+        final byte[] encoded = encode(image);
+        if (encoded == null || encoded.length >= bytes.length) {
+            return null;
+        }
+        return new OcrImage(encoded, "jpeg".equals(format) ? "image/jpeg" : "image/" + format, expired);
+    }
+
+    private BufferedImage scale(final BufferedImage source) {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final double factor = Math.min(1.0, Math.min((double) maxEdge / width, (double) maxEdge / height));
+        final int targetWidth = Math.max(1, (int) Math.round(width * factor));
+        final int targetHeight = Math.max(1, (int) Math.round(height * factor));
+        // 同時轉成不含 alpha 的 RGB，JPEG 編碼器不接受 alpha
+        final BufferedImage target = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g2d = target.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(source, 0, 0, targetWidth, targetHeight, Color.WHITE, null);
+        g2d.dispose();
+        return target;
+    }
+
+    private static BufferedImage gray(final BufferedImage source) {
+        final BufferedImage target =
+                new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D g2d = target.createGraphics();
+        g2d.drawImage(source, 0, 0, null);
+        g2d.dispose();
+        return target;
+    }
+
+    /** Maps the 1st–99th percentile of gray levels onto the full 0–255 range, in place. */
+    static void stretch(final BufferedImage gray) {
+        final byte[] pixels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        final int[] histogram = new int[256];
+        for (final byte pixel : pixels) {
+            histogram[pixel & 0xff]++;
+        }
+        final int clip = pixels.length / 100;
+        int low = 0;
+        int below = histogram[low];
+        while (low < 255 && below <= clip) {
+            below += histogram[++low];
+        }
+        int high = 255;
+        int above = histogram[high];
+        while (high > 0 && above <= clip) {
+            above += histogram[--high];
+        }
+        if (high <= low) {
+            return;
+        }
+        final byte[] lut = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            lut[i] = (byte) Math.clamp((i - low) * 255L / (high - low), 0, 255);
+        }
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = lut[pixels[i] & 0xff];
+        }
+    }
+
+    @Nullable
+    private byte[] encode(final BufferedImage image) throws IOException {
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            return null;
+        }
+        final ImageWriter writer = writers.next();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(baos)) {
+            writer.setOutput(out);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && "jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+
+    public record OcrImage(byte[] bytes, @Nullable String contentType, long expired) {}
+}
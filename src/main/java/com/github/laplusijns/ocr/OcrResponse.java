@@ -1,19 +1,44 @@
 package com.github.laplusijns.ocr;
 
 import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
 
-public record OcrResponse(Result result, @NonNull String response) {
+/** {@code uuid} is set for results of a batch request, so the page can tell them apart. */
+public record OcrResponse(Result result, @NonNull String response, @Nullable String uuid) {
 
     public static OcrResponse success(final String response) {
-        return new OcrResponse(Result.SUCCESS, response);
+        return success(null, response);
+    }
+
+    public static OcrResponse success(@Nullable final String uuid, final String response) {
+        return new OcrResponse(Result.SUCCESS, response, uuid);
+    }
+
+    /** Next chunk of a streamed transcription; the closing {@code SUCCESS} carries the full text. */
+    public static OcrResponse partial(final String response) {
+        return new OcrResponse(Result.PARTIAL, response, null);
     }
 
     public static OcrResponse error(final String response) {
-        return new OcrResponse(Result.ERROR, response);
+        return error(null, response);
+    }
+
+    public static OcrResponse error(@Nullable final String uuid, final String response) {
+        return new OcrResponse(Result.ERROR, response, uuid);
+    }
+
+    public static OcrResponse rejected(final String response) {
+        return rejected(null, response);
+    }
+
+    public static OcrResponse rejected(@Nullable final String uuid, final String response) {
+        return new OcrResponse(Result.REJECTED, response, uuid);
     }
 
     enum Result {
         SUCCESS,
-        ERROR
+        PARTIAL,
+        ERROR,
+        REJECTED
     }
 }
@@ -0,0 +1,194 @@
+package com.github.laplusijns.ocr;
+
+import com.github.laplusijns.JocbProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Runs OCR jobs with at most {@code jocb.ocr.concurrency} model calls at once.
+ *
+ * <p>Waiting jobs are kept per session and dispatched round-robin, so a session that queues many images only
+ * gets every n-th free slot. Beyond {@code jocb.ocr.queue-size} waiting jobs a submission fails with {@link
+ * RejectedExecutionException}. Transient model errors are retried with exponential backoff.
+ */
+@Component
+public class OcrScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(OcrScheduler.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // 每個 session 的等待佇列，sessions 為輪替順序
+    private final Map<String, Deque<Job<?>>> waiting = new HashMap<>();
+    private final Deque<String> sessions = new ArrayDeque<>();
+    private final Set<Job<?>> running = new HashSet<>();
+    private int queued;
+
+    ExecutorService executorService;
+    private final int concurrency;
+    private final int queueSize;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+
+    public OcrScheduler(
+            final ExecutorService ocrExecutor, final JocbProperties jocbProperties, final MeterRegistry meterRegistry) {
+        super();
+        this.executorService = ocrExecutor;
+        final JocbProperties.Ocr ocr = jocbProperties.getOcr();
+        this.concurrency = Math.max(1, ocr.getConcurrency());
+        this.queueSize = ocr.getQueueSize();
+        this.maxRetries = ocr.getMaxRetries();
+        this.retryBackoff = ocr.getRetryBackoff();
+        Gauge.builder("jocb.ocr.queue", this, OcrScheduler::queued)
+                .description("OCR requests waiting for the model")
+                .register(meterRegistry);
+        Gauge.builder("jocb.ocr.running", this, OcrScheduler::running)
+                .description("OCR model calls in progress")
+                .register(meterRegistry);
+    }
+
+    /** Queues {@code work} for {@code session}; the future fails with {@link RejectedExecutionException} when full. */
+    public <T> CompletableFuture<T> submit(final String session, final Callable<T> work) {
+        final Job<T> job = new Job<>(session, work);
+        lock.lock();
+        try {
+            if (queued >= queueSize) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("OCR queue is full"));
+            }
+            final Deque<Job<?>> jobs = waiting.computeIfAbsent(session, _ -> new ArrayDeque<>());
+            if (jobs.isEmpty()) {
+                sessions.addLast(session);
+            }
+            jobs.addLast(job);
+            queued++;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+        return job.future;
+    }
+
+    /** Drops the session's waiting jobs and interrupts its running ones. */
+    public void cancel(final String session) {
+        lock.lock();
+        try {
+            final Deque<Job<?>> jobs = waiting.remove(session);
+            if (jobs != null) {
+                sessions.remove(session);
+                queued -= jobs.size();
+                jobs.forEach(job -> job.future.cancel(false));
+            }
+            running.stream().filter(job -> job.session.equals(session)).forEach(Job::interrupt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int running() {
+        lock.lock();
+        try {
+            return running.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 呼叫時需持有 lock
+    private void dispatch() {
+        while (running.size() < concurrency && !sessions.isEmpty()) {
+            final String session = sessions.pollFirst();
+            final Deque<Job<?>> jobs = waiting.get(session);
+            final Job<?> job = jobs.pollFirst();
+            if (jobs.isEmpty()) {
+                waiting.remove(session);
+            } else {
+                sessions.addLast(session);
+            }
+            queued--;
+            running.add(job);
+            executorService.execute(() -> run(job));
+        }
+    }
+
+    private <T> void run(final Job<T> job) {
+        job.runner = Thread.currentThread();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                if (job.future.isDone()) {
+                    return;
+                }
+                try {
+                    job.future.complete(job.work.call());
+                    return;
+                } catch (TransientAiException | ResourceAccessException e) {
+                    if (attempt >= maxRetries) {
+                        throw e;
+                    }
+                    final Duration backoff = retryBackoff.multipliedBy(1L << attempt);
+                    log.warn("OCR attempt {} failed, retry in {}", attempt + 1, backoff, e);
+                    Thread.sleep(backoff);
+                }
+            }
+        } catch (InterruptedException _) {
+            job.future.cancel(false);
+        } catch (Exception e) {
+            job.future.completeExceptionally(e);
+        } finally {
+            job.runner = null;
+            // 清除 cancel 時可能留下的中斷旗標，避免影響下一個工作
+            Thread.interrupted();
+            lock.lock();
+            try {
+                running.remove(job);
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Job<T> {
+        private final String session;
+        private final Callable<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private volatile Thread runner;
+
+        private Job(final String session, final Callable<T> work) {
+            this.session = session;
+            this.work = work;
+        }
+
+        private void interrupt() {
+            future.cancel(false);
+            final Thread thread = runner;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+}
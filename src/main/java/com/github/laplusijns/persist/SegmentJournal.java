@@ -0,0 +1,476 @@
+package com.github.laplusijns.persist;
+
+import com.github.laplusijns.CacheJournal;
+import com.github.laplusijns.FileObject;
+import com.github.laplusijns.ImageCache;
+import com.github.laplusijns.JocbProperties;
+import com.github.laplusijns.Room;
+import com.github.laplusijns.TextCache;
+import com.github.laplusijns.TextObject;
+import com.github.laplusijns.blob.Blob;
+import com.github.laplusijns.blob.Digests;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only segment log behind {@link ImageCache} and {@link TextCache}.
+ *
+ * <p>Every mutation is framed as {@code [int length][record]} and appended by a single writer thread, so
+ * uploads never wait on disk. Segments roll over at {@code jocb.persistence.segment-size} and are deleted once
+ * every record in them has expired. Tombstones carry "now + ttl" as their expiry so they outlive the entries
+ * they cancel.
+ *
+ * <p>On startup the segments are replayed on the writer thread after the application is ready: only record
+ * headers are read and payloads are skipped, restored images point at their region in the segment file and are
+ * read on first access.
+ *
+ * <p>Images, texts and clears are keyed {@code room:key}; keys without a room, as written before rooms existed,
+ * belong to {@link Room#DEFAULT}. Image deletes and thumbnails stay keyed by uuid, which is unique across rooms.
+ */
+@Component
+@ConditionalOnProperty(prefix = "jocb.persistence", name = "enabled", havingValue = "true")
+public class SegmentJournal implements CacheJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentJournal.class);
+
+    static final String SUFFIX = ".seg";
+
+    private static final byte IMAGE = 1;
+    private static final byte THUMBNAIL = 2;
+    private static final byte IMAGE_DELETE = 3;
+    private static final byte IMAGE_CLEAR = 4;
+    // TEXT / TEXT_DELETE 以內文為 key，只保留讀取舊 segment 的能力
+    private static final byte TEXT = 5;
+    private static final byte TEXT_DELETE = 6;
+    private static final byte TEXT_CLEAR = 7;
+    private static final byte TEXT_ENTRY = 8;
+    private static final byte TEXT_DELETE_ID = 9;
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("jocb-journal").daemon().factory());
+    // 以下欄位只在 writer thread 存取
+    private final NavigableMap<Long, Long> segments = new TreeMap<>();
+    private OutputStream out;
+    private long position;
+    private long current;
+
+    ImageCache imageCache;
+    TextCache textCache;
+    Path directory;
+    long segmentSize;
+    long imageTtl;
+    long textTtl;
+
+    public SegmentJournal(
+            final ImageCache imageCache, final TextCache textCache, final JocbProperties jocbProperties) {
+        this.imageCache = imageCache;
+        this.textCache = textCache;
+        this.directory = Path.of(jocbProperties.getPersistence().getDirectory());
+        this.segmentSize = jocbProperties.getPersistence().getSegmentSize();
+        // tombstone 需活得比任何 entry 久，以可自訂的最長存活時間計
+        this.imageTtl = jocbProperties.getImageTimeout().maxTtlMillis();
+        this.textTtl = jocbProperties.getTextTimeout().maxTtlMillis();
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (final Path path : existing) {
+                final String name = path.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), Long.MAX_VALUE);
+            }
+        }
+        // 新的寫入一律開新 segment，舊檔只讀
+        current = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        openSegment();
+        imageCache.journal(this);
+        textCache.journal(this);
+        writer.scheduleWithFixedDelay(this::purgeExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void reload() {
+        writer.execute(this::replay);
+    }
+
+    @PreDestroy
+    void close() throws InterruptedException, IOException {
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+        out.close();
+    }
+
+    @Override
+    public void imagePut(final FileObject fileObject) {
+        // 其他節點的圖片由該節點自己的 journal 保存
+        if (!fileObject.blob().local()) {
+            return;
+        }
+        append(IMAGE, fileObject.expired(), scoped(fileObject.room(), fileObject.uuid()), data -> {
+            writeNullable(data, fileObject.originalFilename());
+            writeNullable(data, fileObject.contentType());
+            data.writeInt(fileObject.width() == null ? -1 : fileObject.width());
+            data.writeInt(fileObject.height() == null ? -1 : fileObject.height());
+            writeBlob(data, fileObject.blob());
+        });
+    }
+
+    @Override
+    public void imageUpdate(final FileObject fileObject) {
+        final FileObject.Thumbnail thumbnail = fileObject.thumbnail();
+        if (thumbnail == null || !thumbnail.blob().local()) {
+            return;
+        }
+        append(THUMBNAIL, fileObject.expired(), fileObject.uuid(), data -> {
+            data.writeInt(thumbnail.width());
+            data.writeInt(thumbnail.height());
+            writeBlob(data, thumbnail.blob());
+        });
+    }
+
+    @Override
+    public void imageDelete(final String room, final String uuid) {
+        append(IMAGE_DELETE, System.currentTimeMillis() + imageTtl, uuid, _ -> {});
+    }
+
+    @Override
+    public void imageClear(final String room) {
+        append(IMAGE_CLEAR, System.currentTimeMillis() + imageTtl, room, _ -> {});
+    }
+
+    @Override
+    public void textPut(final TextObject textObject) {
+        append(
+                TEXT_ENTRY,
+                textObject.expired(),
+                scoped(textObject.room(), textObject.id()),
+                data -> writeString(data, textObject.text()));
+    }
+
+    @Override
+    public void textDelete(final String room, final String id) {
+        append(TEXT_DELETE_ID, System.currentTimeMillis() + textTtl, scoped(room, id), _ -> {});
+    }
+
+    @Override
+    public void textClear(final String room) {
+        append(TEXT_CLEAR, System.currentTimeMillis() + textTtl, room, _ -> {});
+    }
+
+    private interface Body {
+        void write(DataOutputStream data) throws IOException;
+    }
+
+    private void append(final byte type, final long expired, final String key, final Body body) {
+        writer.execute(() -> {
+            try {
+                // 先組完整筆 record，payload 讀取失敗時不會寫出半筆資料
+                final ByteArrayOutputStream record = new ByteArrayOutputStream();
+                final DataOutputStream data = new DataOutputStream(record);
+                data.writeByte(type);
+                data.writeLong(expired);
+                writeString(data, key);
+                body.write(data);
+
+                final DataOutputStream frame = new DataOutputStream(out);
+                frame.writeInt(record.size());
+                record.writeTo(frame);
+                frame.flush();
+                position += Integer.BYTES + record.size();
+                segments.merge(current, expired, Math::max);
+                if (position >= segmentSize) {
+                    out.close();
+                    current++;
+                    openSegment();
+                }
+            } catch (IllegalStateException | UncheckedIOException _) {
+                // payload 已被釋放，後續的 delete 記錄會抵銷這筆
+            } catch (IOException e) {
+                log.warn("journal append failed", e);
+            }
+        });
+    }
+
+    private void openSegment() throws IOException {
+        out = Files.newOutputStream(segment(current), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        position = 0;
+        segments.put(current, 0L);
+    }
+
+    private Path segment(final long seq) {
+        return directory.resolve("%016d%s".formatted(seq, SUFFIX));
+    }
+
+    private void purgeExpired() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<Long, Long>> it =
+                segments.headMap(current, false).entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Long, Long> entry = it.next();
+            if (entry.getValue() < now) {
+                try {
+                    Files.deleteIfExists(segment(entry.getKey()));
+                    it.remove();
+                } catch (IOException e) {
+                    log.warn("cannot delete journal segment {}", entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    private void replay() {
+        final Map<String, FileObject> images = new LinkedHashMap<>();
+        final Map<String, TextObject> texts = new LinkedHashMap<>();
+        for (final Long seq : segments.headMap(current, false).keySet()) {
+            try {
+                segments.put(seq, scan(segment(seq), images, texts));
+            } catch (IOException e) {
+                log.warn("cannot replay journal segment {}", seq, e);
+            }
+        }
+        final long now = System.currentTimeMillis();
+        int restoredImages = 0;
+        for (final FileObject fileObject : images.values()) {
+            if (fileObject.expired() > now
+                    && restore(() -> imageCache.restore(fileObject), "image", fileObject.room(), fileObject.uuid())) {
+                restoredImages++;
+            }
+        }
+        int restoredTexts = 0;
+        for (final TextObject textObject : texts.values()) {
+            if (textObject.expired() > now
+                    && restore(() -> textCache.restore(textObject), "text", textObject.room(), textObject.id())) {
+                restoredTexts++;
+            }
+        }
+        log.info("journal restored {} images, {} texts", restoredImages, restoredTexts);
+    }
+
+    /** One record at a time, so a room over the limit or a bad entry does not end the replay. */
+    private static boolean restore(final Runnable restore, final String kind, final String room, final String key) {
+        try {
+            restore.run();
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("cannot restore {} {} in room {}", kind, key, room, e);
+            return false;
+        }
+    }
+
+    /** Folds one segment into the live maps and returns the largest expiry it contains. */
+    private long scan(final Path path, final Map<String, FileObject> images, final Map<String, TextObject> texts)
+            throws IOException {
+        long maxExpired = 0;
+        try (CountingInputStream counting =
+                        new CountingInputStream(new BufferedInputStream(Files.newInputStream(path)));
+                DataInputStream in = new DataInputStream(counting)) {
+            while (true) {
+                final int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException _) {
+                    break;
+                }
+                final long start = counting.position;
+                try {
+                    final byte type = in.readByte();
+                    final long expired = in.readLong();
+                    final String key = readString(in);
+                    maxExpired = Math.max(maxExpired, expired);
+                    switch (type) {
+                        case IMAGE -> {
+                            final String filename = readNullable(in);
+                            final String contentType = readNullable(in);
+                            final int width = in.readInt();
+                            final int height = in.readInt();
+                            final Blob blob = readBlob(in, counting, path);
+                            final String uuid = unscoped(key);
+                            images.put(
+                                    uuid,
+                                    new FileObject(
+                                            expired,
+                                            filename,
+                                            blob,
+                                            uuid,
+                                            width < 0 ? null : width,
+                                            height < 0 ? null : height,
+                                            contentType,
+                                            null,
+                                            roomOf(key)));
+                        }
+                        case THUMBNAIL -> {
+                            final int width = in.readInt();
+                            final int height = in.readInt();
+                            final Blob blob = readBlob(in, counting, path);
+                            images.computeIfPresent(
+                                    key,
+                                    (_, f) -> new FileObject(
+                                            f.expired(),
+                                            f.originalFilename(),
+                                            f.blob(),
+                                            f.uuid(),
+                                            f.width(),
+                                            f.height(),
+                                            f.contentType(),
+                                            new FileObject.Thumbnail(width, height, blob),
+                                            f.room()));
+                        }
+                        case IMAGE_DELETE -> images.remove(key);
+                        case IMAGE_CLEAR -> images.values().removeIf(f -> f.room().equals(clearedRoom(key)));
+                        case TEXT -> putText(texts, new TextObject(textId(key), expired, key, Room.DEFAULT));
+                        case TEXT_DELETE -> texts.remove(scoped(Room.DEFAULT, textId(key)));
+                        case TEXT_ENTRY ->
+                            putText(texts, new TextObject(unscoped(key), expired, readString(in), roomOf(key)));
+                        case TEXT_DELETE_ID -> texts.remove(scoped(roomOf(key), unscoped(key)));
+                        case TEXT_CLEAR -> texts.values().removeIf(t -> t.room().equals(clearedRoom(key)));
+                        default -> log.warn("unknown journal record {} in {}", type, path);
+                    }
+                    in.skipNBytes(start + length - counting.position);
+                } catch (EOFException _) {
+                    // 寫到一半就停機的最後一筆
+                    break;
+                }
+            }
+        }
+        return maxExpired;
+    }
+
+    private static void putText(final Map<String, TextObject> texts, final TextObject textObject) {
+        // 重新放入讓重複上傳的文字排到最後
+        final String key = scoped(textObject.room(), textObject.id());
+        texts.remove(key);
+        texts.put(key, textObject);
+    }
+
+    private static String scoped(final String room, final String key) {
+        return room + ':' + key;
+    }
+
+    private static String roomOf(final String scoped) {
+        final int colon = scoped.indexOf(':');
+        return colon < 0 ? Room.DEFAULT : scoped.substring(0, colon);
+    }
+
+    private static String unscoped(final String scoped) {
+        return scoped.substring(scoped.indexOf(':') + 1);
+    }
+
+    private static String clearedRoom(final String key) {
+        // 舊版的清除記錄沒有 room
+        return key.isEmpty() ? Room.DEFAULT : key;
+    }
+
+    private static String textId(final String text) {
+        return Digests.sha256(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBlob(final DataOutputStream data, final Blob blob) throws IOException {
+        final byte[] bytes = blob.bytes();
+        writeString(data, blob.digest());
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static Blob readBlob(final DataInputStream in, final CountingInputStream counting, final Path path)
+            throws IOException {
+        final String digest = readString(in);
+        final int size = in.readInt();
+        final long offset = counting.position;
+        in.skipNBytes(size);
+        return new FileRegionBlob(path, offset, size, digest);
+    }
+
+    private static void writeString(final DataOutputStream data, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return new String(in.readNBytes(checkedLength(in.readInt())), StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullable(final DataOutputStream data, @Nullable final String value) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            writeString(data, value);
+        }
+    }
+
+    @Nullable
+    private static String readNullable(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+
+    private static int checkedLength(final int length) throws EOFException {
+        if (length < 0) {
+            throw new EOFException("corrupt journal record");
+        }
+        return length;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        long position;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            position += skipped;
+            return skipped;
+        }
+    }
+}
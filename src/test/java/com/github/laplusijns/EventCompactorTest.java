@@ -0,0 +1,66 @@
+package com.github.laplusijns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class EventCompactorTest {
+
+    private final EventCompactor<ImageCacheEvent> compactor =
+            new EventCompactor<>(ImageCacheEvent::uuid, ImageCacheEvent::type, ImageCacheEvent::merge);
+
+    private static FileObject file(final String uuid, final Integer width) {
+        return new FileObject(1L, uuid + ".png", null, uuid, width, 1, "image/png", null, Room.DEFAULT);
+    }
+
+    private static List<String> summary(final List<ImageCacheEvent> events) {
+        return events.stream()
+                .map(e -> e.type() + ":" + e.uuid() + "@" + e.version())
+                .toList();
+    }
+
+    @Test
+    void deleteAfterAddLeavesOnlyTheDelete() {
+        final List<ImageCacheEvent> compacted = compactor.apply(
+                List.of(ImageCacheEvent.add(file("a", 1), 1), ImageCacheEvent.delete("a", 2)));
+        assertEquals(List.of("DELETE:a@2"), summary(compacted));
+    }
+
+    @Test
+    void addAfterDeleteKeepsBothInOrder() {
+        final List<ImageCacheEvent> compacted = compactor.apply(
+                List.of(ImageCacheEvent.delete("a", 1), ImageCacheEvent.add(file("a", 1), 2)));
+        assertEquals(List.of("DELETE:a@1", "ADD:a@2"), summary(compacted));
+    }
+
+    @Test
+    void updateIsMergedIntoTheEarlierAdd() {
+        final List<ImageCacheEvent> compacted = compactor.apply(
+                List.of(ImageCacheEvent.add(file("a", null), 1), ImageCacheEvent.update(file("a", 640), 2)));
+        assertEquals(List.of("ADD:a@2"), summary(compacted));
+        assertEquals(640, compacted.getFirst().width());
+    }
+
+    @Test
+    void deleteAllDropsEverythingBeforeIt() {
+        final List<ImageCacheEvent> compacted = compactor.apply(List.of(
+                ImageCacheEvent.add(file("a", 1), 1),
+                ImageCacheEvent.deleteAll(2),
+                ImageCacheEvent.add(file("b", 1), 3),
+                ImageCacheEvent.deleteAll(4),
+                ImageCacheEvent.add(file("c", 1), 5),
+                ImageCacheEvent.delete("d", 6)));
+        assertEquals(List.of("DELETE_ALL:@4", "ADD:c@5", "DELETE:d@6"), summary(compacted));
+    }
+
+    @Test
+    void keysKeepTheOrderOfTheirFirstEvent() {
+        final List<ImageCacheEvent> compacted = compactor.apply(List.of(
+                ImageCacheEvent.add(file("a", 1), 1),
+                ImageCacheEvent.add(file("b", 1), 2),
+                ImageCacheEvent.delete("a", 3),
+                ImageCacheEvent.add(file("a", 2), 4)));
+        assertEquals(List.of("DELETE:a@3", "ADD:a@4", "ADD:b@2"), summary(compacted));
+    }
+}
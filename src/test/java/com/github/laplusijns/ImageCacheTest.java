@@ -0,0 +1,100 @@
+package com.github.laplusijns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.github.laplusijns.blob.Blob;
+import com.github.laplusijns.blob.HeapBlobStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+class ImageCacheTest {
+
+    private static final String ROOM = Room.DEFAULT;
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 2_000;
+    private static final int KEYS = 64;
+
+    /**
+     * Subscribing, loading a page and then applying only the events newer than the page's version must rebuild
+     * exactly the cache contents, however the page interleaves with concurrent writers.
+     */
+    @Test
+    void pagePlusNewerEventsConverges() throws Exception {
+        final JocbProperties jocbProperties = new JocbProperties();
+        jocbProperties.getEvents().setWindow(Duration.ofMillis(5));
+        final ImageCache imageCache = new ImageCache(jocbProperties, new HeapBlobStore());
+        final Blob blob = imageCache.store(new byte[16]);
+        final long expired = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+
+        final Queue<ImageCacheEvent> received = new ConcurrentLinkedQueue<>();
+        final Disposable subscription = imageCache.sub(ROOM).subscribe(received::addAll);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final FilePage page;
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        final String uuid = "key-" + random.nextInt(KEYS);
+                        if (random.nextBoolean()) {
+                            imageCache.put(new FileObject(
+                                    expired, uuid + ".png", blob, uuid, 1, 1, "image/png", null, ROOM));
+                        } else {
+                            imageCache.delete(ROOM, uuid);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            // 寫入進行中時取快照
+            Thread.sleep(5);
+            page = imageCache.page(ROOM, null, KEYS);
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final long last = imageCache.version(ROOM);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (received.stream().mapToLong(ImageCacheEvent::version).max().orElse(0) < last
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        subscription.dispose();
+
+        final Set<String> rebuilt = new HashSet<>();
+        page.files().forEach(f -> rebuilt.add(f.uuid()));
+        for (final ImageCacheEvent event : received) {
+            if (event.version() <= page.version()) {
+                continue;
+            }
+            switch (event.type()) {
+                case ADD, UPDATE -> rebuilt.add(event.uuid());
+                case DELETE -> rebuilt.remove(event.uuid());
+                case DELETE_ALL -> rebuilt.clear();
+            }
+        }
+        final Set<String> actual = new HashSet<>();
+        imageCache.all(ROOM).forEach(f -> actual.add(f.uuid()));
+        assertEquals(actual, rebuilt);
+    }
+}
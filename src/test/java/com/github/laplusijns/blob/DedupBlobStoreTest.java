@@ -0,0 +1,94 @@
+package com.github.laplusijns.blob;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class DedupBlobStoreTest {
+
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 10_000;
+
+    /** Counts writes and releases that reach the underlying store. */
+    private static final class CountingStore extends HeapBlobStore {
+        private final AtomicInteger writes = new AtomicInteger();
+        private final AtomicInteger releases = new AtomicInteger();
+
+        @Override
+        public Blob write(final byte[] bytes, final String digest) {
+            writes.incrementAndGet();
+            return super.write(bytes, digest);
+        }
+
+        @Override
+        public boolean release(final Blob blob) {
+            releases.incrementAndGet();
+            return super.release(blob);
+        }
+    }
+
+    @Test
+    void identicalPayloadsAreStoredOnce() {
+        final CountingStore delegate = new CountingStore();
+        final DedupBlobStore store = new DedupBlobStore(delegate);
+        final Blob first = store.write(new byte[] {1, 2, 3});
+        final Blob second = store.write(new byte[] {1, 2, 3});
+        assertEquals(1, delegate.writes.get());
+        assertFalse(store.release(first));
+        assertTrue(store.release(second));
+        assertEquals(1, delegate.releases.get());
+        assertEquals(0, store.distinctBlobs());
+    }
+
+    @Test
+    void concurrentWriteRetainAndReleaseBalance() throws Exception {
+        final CountingStore delegate = new CountingStore();
+        final DedupBlobStore store = new DedupBlobStore(delegate);
+        final byte[] bytes = {4, 5, 6};
+        // 保留一個參照，payload 在整個測試期間都不應被釋放
+        final Blob pinned = store.write(bytes);
+        final AtomicInteger freed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < ROUNDS; i++) {
+                        final Blob written = store.write(bytes);
+                        final Blob retained = store.retain(written.digest()).orElseThrow();
+                        if (store.release(written)) {
+                            freed.incrementAndGet();
+                        }
+                        if (store.release(retained)) {
+                            freed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, freed.get());
+        assertEquals(1, delegate.writes.get());
+        assertEquals(0, delegate.releases.get());
+        assertTrue(store.release(pinned));
+        assertEquals(1, delegate.releases.get());
+        assertEquals(0, store.distinctBlobs());
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.laplusijns.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.laplusijns.FileObject;
+import com.github.laplusijns.ImageCache;
+import com.github.laplusijns.JocbProperties;
+import com.github.laplusijns.Room;
+import com.github.laplusijns.TextCache;
+import com.github.laplusijns.TextObject;
+import com.github.laplusijns.blob.HeapBlobStore;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ClusterReplicatorTest {
+
+    private static final String ROOM = Room.DEFAULT;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final long expired = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+    private final Member a = new Member("http://node-a");
+    private final Member b = new Member("http://node-b");
+
+    private static final class Member {
+        private final ImageCache imageCache;
+        private final TextCache textCache;
+        private final LocalClusterTransport transport = new LocalClusterTransport();
+
+        private Member(final String advertisedUrl) {
+            final JocbProperties jocbProperties = new JocbProperties();
+            jocbProperties.getCluster().setAdvertisedUrl(advertisedUrl);
+            imageCache = new ImageCache(jocbProperties, new HeapBlobStore());
+            textCache = new TextCache(jocbProperties);
+            new ClusterReplicator(imageCache, textCache, transport, jocbProperties).start();
+        }
+
+        private boolean hasText(final String text) {
+            return textCache.all().stream().map(TextObject::text).anyMatch(text::equals);
+        }
+
+        private boolean hasImage(final String uuid) {
+            return imageCache.file(uuid) != null;
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        a.transport.close();
+        b.transport.close();
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "cluster did not converge");
+            Thread.sleep(10);
+        }
+    }
+
+    private String putImage(final Member member) {
+        final String uuid = UUID.randomUUID().toString();
+        member.imageCache.put(new FileObject(
+                expired,
+                uuid + ".png",
+                member.imageCache.store(uuid.getBytes()),
+                uuid,
+                1,
+                1,
+                "image/png",
+                null,
+                ROOM));
+        return uuid;
+    }
+
+    @Test
+    void putsAndDeletesReachThePeer() throws InterruptedException {
+        final String uuid = putImage(a);
+        final String id = a.textCache.put(ROOM, "hello", expired).id();
+        await(() -> b.hasImage(uuid) && b.hasText("hello"));
+        assertFalse(b.imageCache.file(uuid).blob().local());
+
+        a.imageCache.delete(ROOM, uuid);
+        a.textCache.delete(ROOM, id);
+        await(() -> !b.hasImage(uuid) && !b.hasText("hello"));
+    }
+
+    @Test
+    void snapshotOnRejoinDropsWhatThePeerDeletedMeanwhile() throws InterruptedException {
+        final String kept = putImage(a);
+        final String gone = putImage(a);
+        final String goneId = a.textCache.put(ROOM, "gone", expired).id();
+        a.textCache.put(ROOM, "kept", expired);
+        await(() -> b.hasImage(kept) && b.hasImage(gone) && b.hasText("gone") && b.hasText("kept"));
+
+        b.transport.close();
+        a.imageCache.delete(ROOM, gone);
+        a.textCache.delete(ROOM, goneId);
+        final String added = putImage(a);
+        a.textCache.put(ROOM, "added", expired);
+        // b 離線期間沒有收到任何變更
+        assertTrue(b.hasImage(gone) && b.hasText("gone"));
+
+        b.transport.rejoin();
+        await(() -> b.hasImage(added) && b.hasText("added") && !b.hasImage(gone) && !b.hasText("gone"));
+        assertTrue(b.hasImage(kept) && b.hasText("kept"));
+        // b 的快照不會把已刪除的文字帶回 a
+        assertFalse(a.hasText("gone"));
+        assertEquals(a.imageCache.all().size(), b.imageCache.all().size());
+        assertEquals(a.textCache.all().size(), b.textCache.all().size());
+    }
+}